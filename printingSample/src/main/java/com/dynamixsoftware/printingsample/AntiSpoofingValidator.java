@@ -1,16 +1,21 @@
 package com.dynamixsoftware.printingsample;
 
 import android.content.Context;
-import android.os.Build;
 import android.util.Log;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.concurrent.Future;
 
 /**
  * AntiSpoofingValidator - Comprehensive security validator that precludes:
@@ -29,7 +34,7 @@ public class AntiSpoofingValidator {
     
     private static final String TAG = "AntiSpoofingValidator";
     
-    // Known legitimate domains for validation
+    // Known legitimate domains for validation, always trusted
     private static final Set<String> TRUSTED_DOMAINS = new HashSet<>(Arrays.asList(
         "johncharlesmonti.com",
         "montinode.com",
@@ -37,19 +42,41 @@ public class AntiSpoofingValidator {
         "printhand.com"
     ));
     
-    // Suspicious domain patterns that might indicate spoofing
-    private static final Pattern SUSPICIOUS_DOMAIN_PATTERN = Pattern.compile(
-        ".*\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}.*|" +  // IP addresses in domain
-        ".*xn--.*|" +                                        // Punycode (internationalized domains)
-        ".*[-]{2,}.*|" +                                     // Multiple consecutive hyphens
-        ".*[\\p{InCyrillic}\\p{InGreek}\\p{InArabic}].*"   // Non-Latin scripts
-    );
+    // Asset listing further trusted domains, one per line, loaded at startup
+    static final String TRUSTED_DOMAINS_ASSET = "trusted_domains.txt";
+    
+    // Most edits between a host and a trusted domain it is taken to imitate
+    private static final int MAX_TYPO_DISTANCE = TrustedDomainIndex.MAX_LOOKALIKE_DISTANCE;
+    
+    // Verdicts are pure functions of the domains and the rules; the TTLs only bound how long a
+    // verdict outlives a rule change made without a reload
+    private static final long DNS_VERDICT_TTL_MILLIS = 10 * 60 * 1000;
+    private static final long DOMAIN_VERDICT_TTL_MILLIS = 10 * 60 * 1000;
+    private static final long EXPECTED_DOMAIN_TTL_MILLIS = 10 * 60 * 1000;
+    private static final int MAX_CACHED_VERDICTS = 4096;
+    
+    // Keyed by check and normalized host(s), e.g. "dns|montinode.com"
+    private static final VerdictCache<ValidationResult> VERDICT_CACHE = new VerdictCache<>(MAX_CACHED_VERDICTS);
+    // Trusted domain validateAll() checks a URL against, "" for none
+    private static final VerdictCache<String> EXPECTED_DOMAIN_CACHE = new VerdictCache<>(MAX_CACHED_VERDICTS);
+    
+    // Created on first DNS resolution check
+    private static DnsConsistencyChecker dnsChecker;
+    
+    // Created on first batch validation
+    private static UrlBatchValidator batchValidator;
+    
+    // TRUSTED_DOMAINS until loadTrustedDomains() has read the asset
+    private static volatile TrustedDomainIndex trustedDomainIndex = newTrustedDomainIndex();
     
     // Known malicious driver patterns
     private static final List<String> SUSPICIOUS_DRIVER_PATTERNS = Arrays.asList(
         "wdm_spoof", "fake_driver", "malicious", "backdoor", "rootkit"
     );
     
+    // SUSPICIOUS_DRIVER_PATTERNS until setSuspiciousDriverPatterns() applies a signature feed
+    private static volatile DriverPatternMatcher driverPatternMatcher = new DriverPatternMatcher(SUSPICIOUS_DRIVER_PATTERNS);
+    
     /**
      * Validates against DNS Spoofing attacks by checking DNS resolution consistency
      * and verifying domain authenticity.
@@ -64,45 +91,18 @@ public class AntiSpoofingValidator {
         
         try {
             // Remove protocol if present
-            String cleanDomain = domain.replaceAll("^https?://", "").split("/")[0];
-            
-            // Check for suspicious patterns
-            if (SUSPICIOUS_DOMAIN_PATTERN.matcher(cleanDomain).matches()) {
-                return new ValidationResult(false, 
-                    "Domain contains suspicious patterns that may indicate DNS spoofing", 
-                    SpoofingType.DNS);
-            }
-            
-            // Validate domain format
-            if (!isValidDomainFormat(cleanDomain)) {
-                return new ValidationResult(false, 
-                    "Invalid domain format detected", 
-                    SpoofingType.DNS);
-            }
-            
-            // Check if domain is in trusted list
-            boolean isTrusted = false;
-            for (String trustedDomain : TRUSTED_DOMAINS) {
-                if (cleanDomain.equals(trustedDomain) || cleanDomain.endsWith("." + trustedDomain)) {
-                    isTrusted = true;
-                    break;
-                }
-            }
+            String cleanDomain = toLowerCaseAscii(extractHost(domain));
             
-            if (isTrusted) {
-                return new ValidationResult(true, 
-                    "Domain is trusted and verified against DNS spoofing", 
-                    SpoofingType.DNS);
+            // The verdict only depends on the host and the rules, so repeated hosts are served
+            // from the cache whatever the case of their ASCII letters
+            String cacheKey = "dns|" + cleanDomain;
+            int generation = VERDICT_CACHE.getGeneration();
+            ValidationResult result = VERDICT_CACHE.get(cacheKey);
+            if (result == null) {
+                result = checkDNSSpoofing(cleanDomain);
+                VERDICT_CACHE.put(cacheKey, result, DNS_VERDICT_TTL_MILLIS, generation);
             }
-            
-            // Note: DNS resolution check would require background thread in Android.
-            // For trusted domains above, we skip DNS resolution.
-            // For untrusted domains, additional verification should be done on a background thread.
-            Log.d(TAG, "Domain " + cleanDomain + " passed basic validation checks");
-            
-            return new ValidationResult(true, 
-                "DNS validation passed for " + cleanDomain + " (Note: Full DNS resolution should be done on background thread)", 
-                SpoofingType.DNS);
+            return result;
             
         } catch (Exception e) {
             return new ValidationResult(false, 
@@ -111,6 +111,46 @@ public class AntiSpoofingValidator {
         }
     }
     
+    /**
+     * Validates against DNS Spoofing attacks like {@link #validateDNSSpoofing(String)}, then
+     * resolves the domain on a background thread and checks the answer against the addresses
+     * pinned with {@link #pinDNSAddresses(String, String...)}, or, for a domain without pins,
+     * that it resolves to public addresses only. Verdicts are cached for the TTL of the answer.
+     * 
+     * Returns at once and never blocks the calling thread.
+     * 
+     * @param domain The domain to validate
+     * @param callback Called on the main thread with the ValidationResult, or null
+     * @return Future of the ValidationResult
+     */
+    static Future<ValidationResult> validateDNSResolution(String domain, DnsConsistencyChecker.Callback callback) {
+        DnsConsistencyChecker checker = getDnsChecker();
+        ValidationResult result = validateDNSSpoofing(domain);
+        if (!result.isValid()) {
+            return checker.completed(result, callback);
+        }
+        return checker.check(toLowerCaseAscii(extractHost(domain)), callback);
+    }
+    
+    /**
+     * Pins the addresses a host may resolve to for {@link #validateDNSResolution}.
+     * 
+     * @param host The host, e.g. "api.montinode.com"
+     * @param addresses Its literal addresses, e.g. "203.0.113.10" or "2001:db8::10"
+     * @throws IllegalArgumentException if one of {@code addresses} is not a literal address
+     */
+    static void pinDNSAddresses(String host, String... addresses) {
+        getDnsChecker().pin(toLowerCaseAscii(host), addresses);
+    }
+    
+    /**
+     * Resolves through {@code resolver} in {@link #validateDNSResolution}, e.g. a
+     * {@link DnsConsistencyChecker.StaticResolver} in tests. The system resolver is the default.
+     */
+    static void setDNSResolver(DnsConsistencyChecker.Resolver resolver) {
+        getDnsChecker().setResolver(resolver);
+    }
+    
     /**
      * Validates against Driver/Library Spoofing attacks (adapted from WDM concept).
      * Checks for suspicious driver/library signatures and unauthorized loading.
@@ -127,18 +167,18 @@ public class AntiSpoofingValidator {
                 SpoofingType.WDM);
         }
         
+        // Check for suspicious patterns, ignoring case
+        DriverPatternMatcher matcher = driverPatternMatcher;
+        String suspiciousPattern = matcher.findFirst(driverName);
+        if (suspiciousPattern != null) {
+            return new ValidationResult(false, 
+                "Driver name contains suspicious pattern: " + suspiciousPattern, 
+                SpoofingType.WDM);
+        }
+        
         // Convert to lowercase for case-insensitive comparison
         String lowerDriverName = driverName.toLowerCase(Locale.ROOT);
         
-        // Check for suspicious patterns
-        for (String suspiciousPattern : SUSPICIOUS_DRIVER_PATTERNS) {
-            if (lowerDriverName.contains(suspiciousPattern)) {
-                return new ValidationResult(false, 
-                    "Driver name contains suspicious pattern: " + suspiciousPattern, 
-                    SpoofingType.WDM);
-            }
-        }
-        
         // Check for valid driver/library naming conventions
         // Android uses .so files, Windows uses .sys/.drv/.dll
         // We support both for cross-platform validation
@@ -150,7 +190,7 @@ public class AntiSpoofingValidator {
         }
         
         // Validate driver signature (placeholder - actual implementation would check digital signatures)
-        if (!validateDriverSignature(driverName)) {
+        if (!validateDriverSignature(matcher, driverName)) {
             return new ValidationResult(false, 
                 "Driver signature validation failed - potential WDM spoofing", 
                 SpoofingType.WDM);
@@ -184,59 +224,17 @@ public class AntiSpoofingValidator {
         
         try {
             // Clean both domains
-            String cleanDomain = domain.replaceAll("^https?://", "").split("/")[0].toLowerCase(Locale.ROOT);
-            String cleanExpected = expectedDomain.replaceAll("^https?://", "").split("/")[0].toLowerCase(Locale.ROOT);
-            
-            // Exact match check
-            if (cleanDomain.equals(cleanExpected)) {
-                return new ValidationResult(true, 
-                    "Domain matches expected domain exactly", 
-                    SpoofingType.DOMAIN);
-            }
+            String cleanDomain = extractHost(domain).toLowerCase(Locale.ROOT);
+            String cleanExpected = extractHost(expectedDomain).toLowerCase(Locale.ROOT);
             
-            // Check for homograph attacks (lookalike characters)
-            if (detectHomographAttack(cleanDomain, cleanExpected)) {
-                return new ValidationResult(false, 
-                    "Potential homograph attack detected - lookalike domain", 
-                    SpoofingType.DOMAIN);
+            String cacheKey = "domain|" + cleanDomain + '|' + cleanExpected;
+            int generation = VERDICT_CACHE.getGeneration();
+            ValidationResult result = VERDICT_CACHE.get(cacheKey);
+            if (result == null) {
+                result = checkDomainSpoofing(cleanDomain, cleanExpected);
+                VERDICT_CACHE.put(cacheKey, result, DOMAIN_VERDICT_TTL_MILLIS, generation);
             }
-            
-            // Check for typosquatting
-            if (detectTyposquatting(cleanDomain, cleanExpected)) {
-                return new ValidationResult(false, 
-                    "Potential typosquatting attack detected", 
-                    SpoofingType.DOMAIN);
-            }
-            
-            // Check for subdomain spoofing
-            if (cleanDomain.contains(cleanExpected) && !cleanDomain.equals(cleanExpected)) {
-                String[] domainParts = cleanDomain.split("\\.");
-                String[] expectedParts = cleanExpected.split("\\.");
-                
-                // Valid subdomain should have expected domain at the end
-                boolean validSubdomain = true;
-                int offset = domainParts.length - expectedParts.length;
-                if (offset >= 0) {
-                    for (int i = 0; i < expectedParts.length; i++) {
-                        if (!domainParts[offset + i].equals(expectedParts[i])) {
-                            validSubdomain = false;
-                            break;
-                        }
-                    }
-                } else {
-                    validSubdomain = false;
-                }
-                
-                if (!validSubdomain) {
-                    return new ValidationResult(false, 
-                        "Invalid subdomain structure - potential domain spoofing", 
-                        SpoofingType.DOMAIN);
-                }
-            }
-            
-            return new ValidationResult(false, 
-                "Domain does not match expected domain", 
-                SpoofingType.DOMAIN);
+            return result;
                 
         } catch (Exception e) {
             return new ValidationResult(false, 
@@ -260,16 +258,18 @@ public class AntiSpoofingValidator {
         }
         
         List<String> detectedThreats = new ArrayList<>();
+        // Probed once per process, normally at startup
+        SystemIntegrityProbe.Snapshot system = SystemIntegrityProbe.get(context);
         
         // Check for rooted device (potential system compromise)
-        if (isDeviceRooted()) {
+        if (system.rooted) {
             detectedThreats.add("Device appears to be rooted - potential security risk");
         }
         
         // Note: Debug mode and emulator checks are informational only
         // They don't necessarily indicate security threats in all contexts
-        boolean isDebug = isDebuggable(context);
-        boolean isEmulatorEnv = isEmulator();
+        boolean isDebug = system.debuggable;
+        boolean isEmulatorEnv = system.emulator;
         
         if (isDebug) {
             Log.d(TAG, "Application is in debug mode (normal for development builds)");
@@ -280,7 +280,7 @@ public class AntiSpoofingValidator {
         }
         
         // Check for suspicious system properties (test-keys indicate custom/unsigned build)
-        if (hasSuspiciousSystemProperties()) {
+        if (system.testKeys) {
             detectedThreats.add("Suspicious system properties detected - custom ROM or test build");
         }
         
@@ -313,18 +313,61 @@ public class AntiSpoofingValidator {
         // Check DNS spoofing
         results.add(validateDNSSpoofing(domain));
         
-        // Check domain spoofing against trusted domains
-        for (String trustedDomain : TRUSTED_DOMAINS) {
-            if (domain != null && domain.contains(trustedDomain)) {
-                results.add(validateDomainSpoofing(domain, trustedDomain));
-                break;
-            }
+        // Check domain spoofing against a trusted domain the host mentions or imitates
+        String trustedDomain = findExpectedDomain(domain);
+        if (trustedDomain != null) {
+            results.add(validateDomainSpoofing(domain, trustedDomain));
         }
         
         // Check system hijacking
         results.add(validateSyxhlikie(context));
         
-        // Aggregate results
+        return aggregate(results);
+    }
+    
+    /**
+     * Validates a list of URLs, e.g. the links extracted from a document, against DNS and
+     * domain spoofing on a pool of threads. Each URL is judged by its host, and URLs with the
+     * same host are checked once. Results are passed to the callback in input order as soon as
+     * they are ready. Blocks until all are delivered, so call it off the main thread.
+     * 
+     * @param urls URLs to validate
+     * @param callback Called with the ValidationResult of each URL, in input order
+     * @throws InterruptedException if interrupted before all URLs were validated
+     */
+    static void validateUrls(List<String> urls, UrlBatchValidator.Callback callback) throws InterruptedException {
+        getBatchValidator().validate(urls.iterator(), Integer.MAX_VALUE, callback);
+    }
+    
+    /**
+     * Validates URLs like {@link #validateUrls(List, UrlBatchValidator.Callback)}, reading them
+     * as they are needed and keeping at most {@code window} of them in memory. Use it for inputs
+     * too large to hold at once.
+     * 
+     * @param urls URLs to validate, read once
+     * @param window Most URLs pending at once
+     * @param callback Called with the ValidationResult of each URL, in input order
+     * @throws InterruptedException if interrupted before all URLs were validated
+     */
+    static void validateUrls(Iterator<String> urls, int window, UrlBatchValidator.Callback callback) throws InterruptedException {
+        getBatchValidator().validate(urls, window, callback);
+    }
+    
+    /**
+     * Validates one URL of a batch against DNS and domain spoofing, like {@link #validateAll}
+     * without the system check.
+     */
+    static ValidationResult validateUrl(String url) {
+        List<ValidationResult> results = new ArrayList<>();
+        results.add(validateDNSSpoofing(url));
+        String trustedDomain = findExpectedDomain(url);
+        if (trustedDomain != null) {
+            results.add(validateDomainSpoofing(url, trustedDomain));
+        }
+        return aggregate(results);
+    }
+    
+    private static ValidationResult aggregate(List<ValidationResult> results) {
         StringBuilder failedChecks = new StringBuilder();
         boolean allPassed = true;
         
@@ -347,46 +390,390 @@ public class AntiSpoofingValidator {
         }
     }
     
+    /**
+     * Replaces the allowlist with the built-in trusted domains plus those listed in the
+     * {@link #TRUSTED_DOMAINS_ASSET} asset. Until then only the built-in domains are trusted.
+     * Reads and indexes the whole list, so call it off the main thread.
+     * 
+     * @param context Application context
+     */
+    static void loadTrustedDomains(Context context) {
+        TrustedDomainIndex index = newTrustedDomainIndex();
+        InputStream inputStream = null;
+        try {
+            try {
+                inputStream = context.getAssets().open(TRUSTED_DOMAINS_ASSET);
+                index.addAll(inputStream);
+            } finally {
+                if (inputStream != null) {
+                    inputStream.close();
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not load trusted domains, keeping the built-in ones", e);
+            return;
+        }
+        trustedDomainIndex = index;
+        invalidateVerdicts();
+        Log.d(TAG, "Loaded " + index.size() + " trusted domains");
+    }
+    
+    /**
+     * Screens driver names against {@code patterns}, e.g. a signature feed, from now on instead
+     * of the built-in patterns. Builds the whole matcher before switching to it, so validations
+     * running meanwhile use either the old or the new patterns, never a mix. Call it off the
+     * main thread for large feeds.
+     * 
+     * @param patterns Suspicious patterns, matched ignoring case; a name containing several is
+     *                 reported with the one listed first
+     */
+    static void setSuspiciousDriverPatterns(List<String> patterns) {
+        DriverPatternMatcher matcher = new DriverPatternMatcher(patterns);
+        driverPatternMatcher = matcher;
+        Log.d(TAG, "Loaded " + matcher.size() + " suspicious driver patterns");
+    }
+    
+    /**
+     * Drops all cached verdicts; called whenever the rules they depend on are reloaded.
+     */
+    static void invalidateVerdicts() {
+        VERDICT_CACHE.invalidate();
+        EXPECTED_DOMAIN_CACHE.invalidate();
+    }
+    
+    /**
+     * @return hit-rate metrics of the verdict caches, e.g.
+     * {"verdicts":{"size":120,"hits":9800,"misses":200,"hitRate":0.98,...},"expectedDomains":{...}}
+     */
+    static JSONObject getCacheSnapshot() {
+        JSONObject snapshot = new JSONObject();
+        try {
+            snapshot.put("verdicts", VERDICT_CACHE.snapshot());
+            snapshot.put("expectedDomains", EXPECTED_DOMAIN_CACHE.snapshot());
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not build snapshot", e);
+        }
+        return snapshot;
+    }
+    
     // Helper methods
     
-    private static boolean isValidDomainFormat(String domain) {
-        // Basic domain format validation
-        String domainRegex = "^([a-zA-Z0-9]([a-zA-Z0-9\\-]{0,61}[a-zA-Z0-9])?\\.)+[a-zA-Z]{2,}$";
-        return domain.matches(domainRegex);
+    private static ValidationResult checkDNSSpoofing(String cleanDomain) {
+        TrustedDomainIndex index = trustedDomainIndex;
+        
+        // Check for lookalikes of trusted domains (confusable characters, punycode)
+        String imitatedDomain = index.findHomograph(cleanDomain);
+        if (imitatedDomain != null) {
+            return new ValidationResult(false, 
+                "Domain is a homograph of trusted domain " + imitatedDomain + " - potential DNS spoofing", 
+                SpoofingType.DNS);
+        }
+        
+        // Check for suspicious patterns
+        if (hasSuspiciousPattern(cleanDomain)) {
+            return new ValidationResult(false, 
+                "Domain contains suspicious patterns that may indicate DNS spoofing", 
+                SpoofingType.DNS);
+        }
+        
+        // Validate domain format
+        if (!isValidDomainFormat(cleanDomain)) {
+            return new ValidationResult(false, 
+                "Invalid domain format detected", 
+                SpoofingType.DNS);
+        }
+        
+        // Check if domain is in trusted list
+        if (index.isTrustedHost(cleanDomain)) {
+            return new ValidationResult(true, 
+                "Domain is trusted and verified against DNS spoofing", 
+                SpoofingType.DNS);
+        }
+        
+        // DNS resolution blocks, so it is checked separately by validateDNSResolution()
+        Log.d(TAG, "Domain " + cleanDomain + " passed basic validation checks");
+        
+        return new ValidationResult(true, 
+            "DNS validation passed for " + cleanDomain + " (Note: DNS resolution is checked by validateDNSResolution)", 
+            SpoofingType.DNS);
     }
     
-    private static boolean validateDriverSignature(String driverName) {
-        // Placeholder for actual driver signature validation
-        // In a real implementation, this would check digital signatures
-        // For now, return true if driver name doesn't contain suspicious patterns
-        String lowerName = driverName.toLowerCase(Locale.ROOT);
-        for (String pattern : SUSPICIOUS_DRIVER_PATTERNS) {
-            if (lowerName.contains(pattern)) {
+    private static ValidationResult checkDomainSpoofing(String cleanDomain, String cleanExpected) {
+        // Exact match check
+        if (cleanDomain.equals(cleanExpected)) {
+            return new ValidationResult(true, 
+                "Domain matches expected domain exactly", 
+                SpoofingType.DOMAIN);
+        }
+        
+        // Check for homograph attacks (lookalike characters)
+        if (detectHomographAttack(cleanDomain, cleanExpected)) {
+            return new ValidationResult(false, 
+                "Potential homograph attack detected - lookalike domain", 
+                SpoofingType.DOMAIN);
+        }
+        
+        // Check for typosquatting
+        if (detectTyposquatting(cleanDomain, cleanExpected)) {
+            return new ValidationResult(false, 
+                "Potential typosquatting attack detected", 
+                SpoofingType.DOMAIN);
+        }
+        
+        // Check for subdomain spoofing
+        if (cleanDomain.contains(cleanExpected) && !cleanDomain.equals(cleanExpected)) {
+            String[] domainParts = cleanDomain.split("\\.");
+            String[] expectedParts = cleanExpected.split("\\.");
+            
+            // Valid subdomain should have expected domain at the end
+            boolean validSubdomain = true;
+            int offset = domainParts.length - expectedParts.length;
+            if (offset >= 0) {
+                for (int i = 0; i < expectedParts.length; i++) {
+                    if (!domainParts[offset + i].equals(expectedParts[i])) {
+                        validSubdomain = false;
+                        break;
+                    }
+                }
+            } else {
+                validSubdomain = false;
+            }
+            
+            if (!validSubdomain) {
+                return new ValidationResult(false, 
+                    "Invalid subdomain structure - potential domain spoofing", 
+                    SpoofingType.DOMAIN);
+            }
+        }
+        
+        return new ValidationResult(false, 
+            "Domain does not match expected domain", 
+            SpoofingType.DOMAIN);
+    }
+    
+    private static synchronized UrlBatchValidator getBatchValidator() {
+        if (batchValidator == null) {
+            batchValidator = new UrlBatchValidator(Runtime.getRuntime().availableProcessors());
+        }
+        return batchValidator;
+    }
+    
+    private static synchronized DnsConsistencyChecker getDnsChecker() {
+        if (dnsChecker == null) {
+            dnsChecker = new DnsConsistencyChecker(DnsConsistencyChecker.SYSTEM_RESOLVER);
+        }
+        return dnsChecker;
+    }
+    
+    private static String findExpectedDomain(String domain) {
+        if (domain == null || domain.isEmpty()) {
+            return null;
+        }
+        // Keyed by host, so URLs differing only in path, query or case share one entry
+        String host;
+        try {
+            host = toLowerCaseAscii(extractHost(domain));
+        } catch (IllegalArgumentException e) {
+            // no host, already reported by the DNS check
+            return null;
+        }
+        int generation = EXPECTED_DOMAIN_CACHE.getGeneration();
+        String expectedDomain = EXPECTED_DOMAIN_CACHE.get(host);
+        if (expectedDomain == null) {
+            TrustedDomainIndex index = trustedDomainIndex;
+            expectedDomain = index.findContained(host);
+            if (expectedDomain == null) {
+                // or one it looks like, e.g. montniode.com for montinode.com
+                expectedDomain = findImitatedDomain(index, host);
+            }
+            if (expectedDomain == null) {
+                expectedDomain = "";
+            }
+            EXPECTED_DOMAIN_CACHE.put(host, expectedDomain, EXPECTED_DOMAIN_TTL_MILLIS, generation);
+        }
+        return expectedDomain.isEmpty() ? null : expectedDomain;
+    }
+    
+    private static String findImitatedDomain(TrustedDomainIndex index, String host) {
+        if (host.isEmpty() || index.isTrustedHost(host)) {
+            return null;
+        }
+        String imitatedDomain = index.findHomograph(host);
+        return imitatedDomain != null ? imitatedDomain : index.findLookalike(host, MAX_TYPO_DISTANCE);
+    }
+    
+    private static TrustedDomainIndex newTrustedDomainIndex() {
+        TrustedDomainIndex index = new TrustedDomainIndex();
+        for (String trustedDomain : TRUSTED_DOMAINS) {
+            index.add(trustedDomain);
+        }
+        return index;
+    }
+    
+    /**
+     * Strips a leading "http://" or "https://" and everything from the first '/' on, the way
+     * {@code url.replaceAll("^https?://", "").split("/")[0]} did, without compiling a regex.
+     * Returns {@code url} itself when there is nothing to strip.
+     * 
+     * @throws IllegalArgumentException if only slashes follow the scheme, where split() left no
+     *         element at all
+     */
+    static String extractHost(String url) {
+        int start = 0;
+        if (url.startsWith("http://")) {
+            start = 7;
+        } else if (url.startsWith("https://")) {
+            start = 8;
+        }
+        int end = url.indexOf('/', start);
+        if (end < 0) {
+            return start == 0 ? url : url.substring(start);
+        }
+        if (end == start) {
+            for (int i = start; i < url.length(); i++) {
+                if (url.charAt(i) != '/') {
+                    return "";
+                }
+            }
+            throw new IllegalArgumentException("No host in " + url);
+        }
+        return url.substring(start, end);
+    }
+    
+    /**
+     * Lowercases the ASCII letters of {@code host} and leaves any other character as it is.
+     * {@code toLowerCase()} would also fold lookalikes into ASCII, e.g. the KELVIN SIGN U+212A
+     * into 'k', and a host spelled with them would then pass as a valid ASCII domain.
+     */
+    static String toLowerCaseAscii(String host) {
+        for (int i = 0; i < host.length(); i++) {
+            if (host.charAt(i) >= 'A' && host.charAt(i) <= 'Z') {
+                char[] chars = host.toCharArray();
+                for (int j = i; j < chars.length; j++) {
+                    if (chars[j] >= 'A' && chars[j] <= 'Z') {
+                        chars[j] += 'a' - 'A';
+                    }
+                }
+                return new String(chars);
+            }
+        }
+        return host;
+    }
+    
+    /**
+     * Single-pass equivalent of matching the whole host against the former suspicious pattern:
+     * a dotted quad of 1-3 digit groups, "xn--" or any other double hyphen, or a Cyrillic, Greek
+     * or Arabic character. As with that pattern, a line terminator anywhere means no match.
+     */
+    static boolean hasSuspiciousPattern(String domain) {
+        boolean suspicious = false;
+        // Digit groups seen so far of a possible dotted quad, -1 when the last label broke it
+        int quad = -1;
+        boolean labelAllDigits = true;
+        int labelStart = 0;
+        int length = domain.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? domain.charAt(i) : '.';
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return false;
+            }
+            if (c == '.') {
+                int labelLength = i - labelStart;
+                // The first group may be the tail of a longer number and the last one the head
+                if (quad == 2 && labelLength > 0 && isDigit(domain.charAt(labelStart))) {
+                    suspicious = true;
+                }
+                if (labelAllDigits && labelLength >= 1 && labelLength <= 3) {
+                    quad = quad >= 0 ? Math.min(quad + 1, 2) : 0;
+                } else if (labelLength > 0 && isDigit(domain.charAt(i - 1))) {
+                    quad = 0;
+                } else {
+                    quad = -1;
+                }
+                labelAllDigits = true;
+                labelStart = i + 1;
+            } else {
+                labelAllDigits &= isDigit(c);
+                if (c == '-' && i + 1 < length && domain.charAt(i + 1) == '-'
+                        || c >= '\u0370' && c <= '\u03ff'   // Greek and Coptic
+                        || c >= '\u0400' && c <= '\u04ff'   // Cyrillic
+                        || c >= '\u0600' && c <= '\u06ff') { // Arabic
+                    suspicious = true;
+                }
+            }
+        }
+        return suspicious;
+    }
+    
+    /**
+     * Hand-written equivalent of matching
+     * {@code ^([a-zA-Z0-9]([a-zA-Z0-9\-]{0,61}[a-zA-Z0-9])?\.)+[a-zA-Z]{2,}$}: one or more labels of
+     * 1-63 letters, digits and inner hyphens, each followed by a dot, then a top-level domain of
+     * at least two letters.
+     */
+    static boolean isValidDomainFormat(String domain) {
+        int length = domain.length();
+        int labelStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (domain.charAt(i) == '.') {
+                if (!isValidLabel(domain, labelStart, i)) {
+                    return false;
+                }
+                labelStart = i + 1;
+            }
+        }
+        if (labelStart == 0 || length - labelStart < 2) {
+            return false;
+        }
+        for (int i = labelStart; i < length; i++) {
+            if (!isAsciiLetter(domain.charAt(i))) {
                 return false;
             }
         }
         return true;
     }
     
-    private static boolean detectHomographAttack(String domain, String expectedDomain) {
-        // Check for lookalike characters (simplified version)
-        // In production, would use comprehensive Unicode similarity detection
-        if (Math.abs(domain.length() - expectedDomain.length()) > 2) {
+    private static boolean isValidLabel(String domain, int start, int end) {
+        int length = end - start;
+        if (length < 1 || length > 63) {
             return false;
         }
-        
-        // Calculate similarity
-        int differences = 0;
-        int minLength = Math.min(domain.length(), expectedDomain.length());
-        for (int i = 0; i < minLength; i++) {
-            if (domain.charAt(i) != expectedDomain.charAt(i)) {
-                differences++;
+        if (!isAsciiLetterOrDigit(domain.charAt(start)) || !isAsciiLetterOrDigit(domain.charAt(end - 1))) {
+            return false;
+        }
+        for (int i = start + 1; i < end - 1; i++) {
+            char c = domain.charAt(i);
+            if (c != '-' && !isAsciiLetterOrDigit(c)) {
+                return false;
             }
         }
-        differences += Math.abs(domain.length() - expectedDomain.length());
-        
-        // If very similar but not exact, might be homograph
-        return differences > 0 && differences <= 3;
+        return true;
+    }
+    
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    private static boolean isAsciiLetter(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+    
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return isAsciiLetter(c) || isDigit(c);
+    }
+    
+    private static boolean validateDriverSignature(DriverPatternMatcher matcher, String driverName) {
+        // Placeholder for actual driver signature validation
+        // In a real implementation, this would check digital signatures
+        // For now, return true if driver name doesn't contain suspicious patterns
+        return matcher.findFirst(driverName) == null;
+    }
+    
+    private static boolean detectHomographAttack(String domain, String expectedDomain) {
+        // Lookalike characters (Cyrillic 'о' for 'o', "rn" for 'm', accents, punycode) reduce
+        // to the same confusable skeleton as the domain they imitate
+        return !domain.equals(expectedDomain)
+            && ConfusableSkeleton.skeleton(domain).equals(ConfusableSkeleton.skeleton(expectedDomain));
     }
     
     private static boolean detectTyposquatting(String domain, String expectedDomain) {
@@ -398,12 +785,12 @@ public class AntiSpoofingValidator {
             return false;
         }
         
-        // Calculate Levenshtein distance (edit distance)
-        int distance = calculateLevenshteinDistance(domain, expectedDomain);
+        // Calculate Levenshtein distance (edit distance), giving up beyond the typosquatting range
+        int distance = LookalikeDomainIndex.distance(domain, expectedDomain, MAX_TYPO_DISTANCE);
         
         // Typosquatting typically has edit distance of 1-2
         // and domains share significant common characters
-        if (distance > 0 && distance <= 2) {
+        if (distance > 0 && distance <= MAX_TYPO_DISTANCE) {
             // Check if domains are actually similar (share common prefix/suffix)
             int commonPrefixLength = 0;
             int minLen = Math.min(domain.length(), expectedDomain.length());
@@ -423,84 +810,6 @@ public class AntiSpoofingValidator {
         return false;
     }
     
-    private static int calculateLevenshteinDistance(String s1, String s2) {
-        int[][] dp = new int[s1.length() + 1][s2.length() + 1];
-        
-        for (int i = 0; i <= s1.length(); i++) {
-            dp[i][0] = i;
-        }
-        
-        for (int j = 0; j <= s2.length(); j++) {
-            dp[0][j] = j;
-        }
-        
-        for (int i = 1; i <= s1.length(); i++) {
-            for (int j = 1; j <= s2.length(); j++) {
-                if (s1.charAt(i - 1) == s2.charAt(j - 1)) {
-                    dp[i][j] = dp[i - 1][j - 1];
-                } else {
-                    dp[i][j] = 1 + Math.min(dp[i - 1][j - 1], 
-                                   Math.min(dp[i - 1][j], dp[i][j - 1]));
-                }
-            }
-        }
-        
-        return dp[s1.length()][s2.length()];
-    }
-    
-    private static boolean isDeviceRooted() {
-        // Check for common root indicators
-        String[] rootPaths = {
-            "/system/app/Superuser.apk",
-            "/sbin/su",
-            "/system/bin/su",
-            "/system/xbin/su",
-            "/data/local/xbin/su",
-            "/data/local/bin/su",
-            "/system/sd/xbin/su",
-            "/system/bin/failsafe/su",
-            "/data/local/su"
-        };
-        
-        for (String path : rootPaths) {
-            if (new java.io.File(path).exists()) {
-                return true;
-            }
-        }
-        
-        return false;
-    }
-    
-    private static boolean isDebuggable(Context context) {
-        return (context.getApplicationInfo().flags & android.content.pm.ApplicationInfo.FLAG_DEBUGGABLE) != 0;
-    }
-    
-    private static boolean hasSuspiciousSystemProperties() {
-        // Check for suspicious system properties that might indicate tampering
-        try {
-            String buildTags = Build.TAGS;
-            if (buildTags != null && buildTags.contains("test-keys")) {
-                return true;
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "Error checking system properties", e);
-        }
-        
-        return false;
-    }
-    
-    private static boolean isEmulator() {
-        // Check for emulator indicators
-        return Build.FINGERPRINT.startsWith("generic")
-            || Build.FINGERPRINT.startsWith("unknown")
-            || Build.MODEL.contains("google_sdk")
-            || Build.MODEL.contains("Emulator")
-            || Build.MODEL.contains("Android SDK built for x86")
-            || Build.MANUFACTURER.contains("Genymotion")
-            || (Build.BRAND.startsWith("generic") && Build.DEVICE.startsWith("generic"))
-            || "google_sdk".equals(Build.PRODUCT);
-    }
-    
     /**
      * Enum representing different types of spoofing attacks
      */
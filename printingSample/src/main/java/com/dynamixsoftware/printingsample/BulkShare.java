@@ -0,0 +1,243 @@
+package com.dynamixsoftware.printingsample;
+
+import android.content.ClipData;
+import android.content.ContentResolver;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.OpenableColumns;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * BulkShare - Splits a share of many documents into {@code ACTION_SEND_MULTIPLE} intents small
+ * enough for one binder transaction.
+ *
+ * Documents with identical content are shared once: URIs are compared first, then sizes, and
+ * only documents of equal size are read and hashed. The remaining URIs are packed into batches
+ * bounded by count and by the estimated size of the marshalled intent, well under the 1 MB
+ * binder transaction limit. Each batch carries its URIs in a {@link ClipData}, so the single
+ * {@link Intent#FLAG_GRANT_READ_URI_PERMISSION} grants all of them at once, and also in
+ * {@link Intent#EXTRA_STREAM} for receivers that only read the extra.
+ *
+ * Preparing a share reads the documents, so call {@link #prepare} off the main thread. A prepared
+ * share is saved to a file, so the batches not sent yet survive the activity, or the process,
+ * being recreated while PrintHand is in front. The saved state of the activity only names the
+ * file: thousands of URIs would not fit in its binder transaction either.
+ */
+class BulkShare {
+
+    private static final String TAG = "BulkShare";
+
+    private static final int MAX_BATCH_ITEMS = 100;
+    // Marshalled size budget of one intent; each URI is written twice, as a UTF-16 string
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+    private static final int URI_OVERHEAD_BYTES = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String SHARES_DIR = "bulk_shares";
+
+    private final List<ArrayList<Uri>> batches;
+    private final String mimeType;
+
+    private BulkShare(List<ArrayList<Uri>> batches, String mimeType) {
+        this.batches = batches;
+        this.mimeType = mimeType;
+    }
+
+    /**
+     * Drops the documents whose content duplicates an earlier one and splits the rest into
+     * batches.
+     */
+    static BulkShare prepare(ContentResolver contentResolver, List<Uri> uris, String mimeType) {
+        List<Uri> unique = dedupe(contentResolver, uris);
+        Log.d(TAG, "Sharing " + unique.size() + " of " + uris.size() + " documents");
+        return new BulkShare(split(unique), mimeType);
+    }
+
+    /**
+     * @return a new file in the cache directory to {@link #save} a share to
+     */
+    static File newFile(File cacheDir) {
+        File dir = new File(cacheDir, SHARES_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs())
+            Log.w(TAG, "Could not create " + dir);
+        return new File(dir, Long.toString(System.currentTimeMillis()) + '-' + System.nanoTime());
+    }
+
+    void save(File file) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            output.writeUTF(mimeType);
+            output.writeInt(batches.size());
+            for (List<Uri> batch : batches) {
+                output.writeInt(batch.size());
+                for (Uri uri : batch)
+                    output.writeUTF(uri.toString());
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Reads the file, so call it off the main thread.
+     *
+     * @return the share saved by {@link #save(File)}, or {@code null} if {@code file} does not
+     *         hold a complete one
+     */
+    static BulkShare load(File file) {
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                String mimeType = input.readUTF();
+                int batchCount = input.readInt();
+                List<ArrayList<Uri>> batches = new ArrayList<>();
+                for (int i = 0; i < batchCount; i++) {
+                    int size = input.readInt();
+                    ArrayList<Uri> batch = new ArrayList<>();
+                    for (int j = 0; j < size; j++)
+                        batch.add(Uri.parse(input.readUTF()));
+                    if (batch.isEmpty())
+                        return null;
+                    batches.add(batch);
+                }
+                return batches.isEmpty() ? null : new BulkShare(batches, mimeType);
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read share " + file, e);
+            return null;
+        }
+    }
+
+    int getBatchCount() {
+        return batches.size();
+    }
+
+    int getBatchSize(int batch) {
+        return batches.get(batch).size();
+    }
+
+    Intent buildIntent(int batch) {
+        ArrayList<Uri> uris = batches.get(batch);
+        ClipData clipData = new ClipData(null, new String[]{mimeType}, new ClipData.Item(uris.get(0)));
+        for (int i = 1; i < uris.size(); i++)
+            clipData.addItem(new ClipData.Item(uris.get(i)));
+        Intent intent = new Intent(Intent.ACTION_SEND_MULTIPLE);
+        intent.setType(mimeType);
+        intent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, uris);
+        intent.setClipData(clipData);
+        intent.setFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        return intent;
+    }
+
+    static List<ArrayList<Uri>> split(List<Uri> uris) {
+        List<ArrayList<Uri>> batches = new ArrayList<>();
+        ArrayList<Uri> batch = new ArrayList<>();
+        int batchBytes = 0;
+        for (Uri uri : uris) {
+            int bytes = 2 * (2 * uri.toString().length() + URI_OVERHEAD_BYTES);
+            if (!batch.isEmpty() && (batch.size() >= MAX_BATCH_ITEMS || batchBytes + bytes > MAX_BATCH_BYTES)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(uri);
+            batchBytes += bytes;
+        }
+        if (!batch.isEmpty())
+            batches.add(batch);
+        return batches;
+    }
+
+    static List<Uri> dedupe(ContentResolver contentResolver, List<Uri> uris) {
+        Set<Uri> distinct = new LinkedHashSet<>(uris);
+        // Only documents sharing a size can be identical, so only those are hashed
+        Map<Long, List<Uri>> bySize = new HashMap<>();
+        for (Uri uri : distinct) {
+            long size = querySize(contentResolver, uri);
+            if (size >= 0) {
+                List<Uri> sameSize = bySize.get(size);
+                if (sameSize == null) {
+                    sameSize = new ArrayList<>();
+                    bySize.put(size, sameSize);
+                }
+                sameSize.add(uri);
+            }
+        }
+        Set<Uri> duplicates = new HashSet<>();
+        for (List<Uri> sameSize : bySize.values()) {
+            if (sameSize.size() < 2)
+                continue;
+            Set<String> digests = new HashSet<>();
+            for (Uri uri : sameSize) {
+                String digest = digest(contentResolver, uri);
+                if (digest != null && !digests.add(digest))
+                    duplicates.add(uri);
+            }
+        }
+        List<Uri> unique = new ArrayList<>();
+        for (Uri uri : distinct)
+            if (!duplicates.contains(uri))
+                unique.add(uri);
+        return unique;
+    }
+
+    private static long querySize(ContentResolver contentResolver, Uri uri) {
+        Cursor cursor = contentResolver.query(uri, new String[]{OpenableColumns.SIZE}, null, null, null);
+        if (cursor == null)
+            return -1;
+        try {
+            int column = cursor.getColumnIndex(OpenableColumns.SIZE);
+            return cursor.moveToFirst() && column >= 0 && !cursor.isNull(column) ? cursor.getLong(column) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String digest(ContentResolver contentResolver, Uri uri) {
+        InputStream inputStream = null;
+        try {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                inputStream = contentResolver.openInputStream(uri);
+                if (inputStream == null)
+                    return null;
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1)
+                    digest.update(buffer, 0, read);
+                return Base64.encodeToString(digest.digest(), Base64.NO_WRAP);
+            } finally {
+                if (inputStream != null)
+                    inputStream.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read " + uri, e);
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
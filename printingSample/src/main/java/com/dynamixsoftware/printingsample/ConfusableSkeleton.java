@@ -0,0 +1,87 @@
+package com.dynamixsoftware.printingsample;
+
+import java.net.IDN;
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * ConfusableSkeleton - Reduces a host to a skeleton in the spirit of Unicode TR39, so that hosts
+ * which look alike have the same skeleton: "montinоde.com" with a Cyrillic 'о', its punycode
+ * form and "montínode.com" all reduce to the skeleton of "montinode.com".
+ *
+ * Punycode labels are decoded first. The host is then decomposed (NFKD), which also folds
+ * full-width and other compatibility forms. Combining marks are dropped, so accented letters
+ * reduce to their base letter. Every character is then lowercased and mapped through a table of
+ * confusable characters to its ASCII prototype. The table is a pair of sorted char arrays,
+ * searched by binary search; pure ASCII hosts skip the normalization.
+ */
+class ConfusableSkeleton {
+
+    // Pairs of a confusable lowercase character and its prototype
+    private static final String CONFUSABLE_PAIRS =
+        // Cyrillic
+        "аaсcԁdеeһhіiјjӏlоoрpԛqѕsуyхxԝwѵvҽe" +
+        // Greek
+        "αaοoνvρpιiκkυuχxϲcϳjγyηnωw" +
+        // Armenian
+        "օoոnսuհhցgզq" +
+        // Latin lookalikes outside ASCII
+        "ıiɑaɡgɩiɪiʟlɴnʀr" +
+        // ASCII digits taken for letters
+        "0o1l";
+
+    private static final char[] FROM;
+    private static final char[] TO;
+
+    static {
+        int count = CONFUSABLE_PAIRS.length() / 2;
+        long[] pairs = new long[count];
+        for (int i = 0; i < count; i++)
+            pairs[i] = (long) CONFUSABLE_PAIRS.charAt(2 * i) << 16 | CONFUSABLE_PAIRS.charAt(2 * i + 1);
+        Arrays.sort(pairs);
+        FROM = new char[count];
+        TO = new char[count];
+        for (int i = 0; i < count; i++) {
+            FROM[i] = (char) (pairs[i] >>> 16);
+            TO[i] = (char) pairs[i];
+        }
+    }
+
+    /**
+     * @return the skeleton of {@code host}; hosts with equal skeletons are visually confusable
+     */
+    static String skeleton(String host) {
+        String text = toUnicode(host);
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++)
+            ascii = text.charAt(i) < 0x80;
+        if (!ascii)
+            text = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        StringBuilder skeleton = new StringBuilder(text.length() + 4);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!ascii && Character.getType(c) == Character.NON_SPACING_MARK)
+                continue;
+            // host names are case-insensitive, so case is folded rather than compared
+            c = Character.toLowerCase(c);
+            if (c == 'm') {
+                skeleton.append("rn");
+                continue;
+            }
+            int index = Arrays.binarySearch(FROM, c);
+            skeleton.append(index >= 0 ? TO[index] : c);
+        }
+        return skeleton.toString();
+    }
+
+    /**
+     * Decodes the punycode ("xn--") labels of {@code host}. Labels that are not valid punycode
+     * are left as they are.
+     */
+    static String toUnicode(String host) {
+        for (int i = 0; i + 4 <= host.length(); i++)
+            if ((i == 0 || host.charAt(i - 1) == '.') && host.regionMatches(true, i, "xn--", 0, 4))
+                return IDN.toUnicode(host, IDN.ALLOW_UNASSIGNED);
+        return host;
+    }
+}
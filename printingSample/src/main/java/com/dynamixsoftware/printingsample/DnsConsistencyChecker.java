@@ -0,0 +1,414 @@
+package com.dynamixsoftware.printingsample;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * DnsConsistencyChecker - Resolves hosts on its own threads and checks the answers against the
+ * addresses pinned for them, caching each verdict for the TTL of the answer.
+ *
+ * {@link #check} never blocks the caller: it returns a {@link Future} at once, and the optional
+ * {@link Callback} is called on the main thread. Concurrent checks of a host share one lookup,
+ * but every caller gets its own future, so cancelling one leaves the others waiting. A caller
+ * that cancelled its future is not called back.
+ *
+ * A host with pinned addresses passes only if every address it resolves to is pinned; pins are
+ * parsed, so any spelling of an IPv6 address matches. Any other host passes unless it resolves
+ * to a loopback, link-local, private, unique-local (fc00::/7) or carrier-grade NAT
+ * (100.64.0.0/10) address, which a public name never should; that is what a spoofed or
+ * rebinding answer looks like.
+ *
+ * Changing the pins or the resolver bumps a generation. A lookup that raced such a change is
+ * repeated, and a verdict stamped with an older generation is never cached.
+ */
+class DnsConsistencyChecker {
+
+    private static final String TAG = "DnsConsistencyChecker";
+
+    // InetAddress does not report TTLs; this matches the JVM's own positive cache
+    static final long DEFAULT_TTL_MILLIS = 30 * 1000;
+    private static final long MAX_TTL_MILLIS = 10 * 60 * 1000;
+    private static final long NEGATIVE_TTL_MILLIS = 10 * 1000;
+    private static final int MAX_CACHED_VERDICTS = 256;
+    private static final int MAX_CONCURRENT_LOOKUPS = 4;
+    // pins changing faster than this is a caller bug; the last verdict is returned uncached
+    private static final int MAX_LOOKUP_ATTEMPTS = 3;
+
+    private static final Runnable NOTHING = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    interface Resolver {
+        /**
+         * Blocks until {@code host} is resolved; called on a checker thread.
+         */
+        Answer resolve(String host) throws UnknownHostException;
+    }
+
+    interface Callback {
+        void onChecked(AntiSpoofingValidator.ValidationResult result);
+    }
+
+    interface Clock {
+        /**
+         * @return milliseconds since some fixed point, never going backwards
+         */
+        long elapsedRealtime();
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    static final class Answer {
+        final List<InetAddress> addresses;
+        final long ttlMillis;
+
+        Answer(List<InetAddress> addresses, long ttlMillis) {
+            this.addresses = addresses;
+            this.ttlMillis = ttlMillis;
+        }
+    }
+
+    /**
+     * Resolves through the system resolver, {@link InetAddress#getAllByName(String)}.
+     */
+    static final Resolver SYSTEM_RESOLVER = new Resolver() {
+        @Override
+        public Answer resolve(String host) throws UnknownHostException {
+            return new Answer(Arrays.asList(InetAddress.getAllByName(host)), DEFAULT_TTL_MILLIS);
+        }
+    };
+
+    /**
+     * Answers from a fixed table, for tests and offline runs; unknown hosts do not resolve.
+     */
+    static class StaticResolver implements Resolver {
+
+        // guarded by this
+        private final Map<String, Answer> answers = new HashMap<>();
+
+        synchronized StaticResolver put(String host, long ttlMillis, String... addresses) throws UnknownHostException {
+            List<InetAddress> resolved = new ArrayList<>();
+            for (String address : addresses)
+                // a literal address is parsed, never looked up
+                resolved.add(InetAddress.getByName(address));
+            answers.put(host, new Answer(resolved, ttlMillis));
+            return this;
+        }
+
+        @Override
+        public synchronized Answer resolve(String host) throws UnknownHostException {
+            Answer answer = answers.get(host);
+            if (answer == null)
+                throw new UnknownHostException(host);
+            return answer;
+        }
+    }
+
+    private static final class Verdict {
+        final AntiSpoofingValidator.ValidationResult result;
+        final long expiresAt;
+
+        Verdict(AntiSpoofingValidator.ValidationResult result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private volatile Resolver resolver;
+    private final ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENT_LOOKUPS);
+    private final Clock clock;
+    private final Executor callbackExecutor;
+
+    // guarded by this
+    private final Map<String, Set<InetAddress>> pins = new HashMap<>();
+    private final Map<String, Verdict> verdicts = new LinkedHashMap<String, Verdict>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Verdict> eldest) {
+            return size() > MAX_CACHED_VERDICTS;
+        }
+    };
+    private final Map<String, Check> inFlight = new HashMap<>();
+    private long generation;
+
+    DnsConsistencyChecker(Resolver resolver) {
+        this(resolver, SYSTEM_CLOCK, new Executor() {
+            private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+            @Override
+            public void execute(Runnable command) {
+                mainHandler.post(command);
+            }
+        });
+    }
+
+    /**
+     * @param callbackExecutor Runs the callbacks, the main thread outside of tests
+     */
+    DnsConsistencyChecker(Resolver resolver, Clock clock, Executor callbackExecutor) {
+        this.resolver = resolver;
+        this.clock = clock;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Resolves through {@code resolver} from now on and forgets the cached verdicts.
+     */
+    synchronized void setResolver(Resolver resolver) {
+        this.resolver = resolver;
+        verdicts.clear();
+        generation++;
+    }
+
+    /**
+     * Pins the addresses {@code host} may resolve to, replacing earlier pins, and drops its
+     * cached verdict. A check of {@code host} already running is repeated with the new pins.
+     *
+     * @param addresses Literal IPv4 or IPv6 addresses
+     * @throws IllegalArgumentException if one of {@code addresses} is not a literal address
+     */
+    void pin(String host, String... addresses) {
+        Set<InetAddress> pinned = new HashSet<>();
+        for (String address : addresses)
+            pinned.add(parseLiteral(address));
+        synchronized (this) {
+            pins.put(host, pinned);
+            verdicts.remove(host);
+            generation++;
+        }
+    }
+
+    /**
+     * Parses an IPv4 or IPv6 literal without ever looking a name up.
+     */
+    static InetAddress parseLiteral(String address) {
+        boolean literal = !address.isEmpty();
+        for (int i = 0; i < address.length() && literal; i++) {
+            char c = address.charAt(i);
+            literal = c == '.' || c == ':' || c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F';
+        }
+        // an IPv4 literal is digits and dots only, anything with letters must be IPv6
+        if (literal && address.indexOf(':') < 0)
+            for (int i = 0; i < address.length() && literal; i++)
+                literal = address.charAt(i) == '.' || address.charAt(i) >= '0' && address.charAt(i) <= '9';
+        if (!literal)
+            throw new IllegalArgumentException("Not a literal address: " + address);
+        try {
+            return InetAddress.getByName(address);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Not a literal address: " + address, e);
+        }
+    }
+
+    /**
+     * @return whether {@code address} can only be reached on a local or provider network
+     */
+    static boolean isNonPublicAddress(InetAddress address) {
+        if (address.isLoopbackAddress() || address.isAnyLocalAddress() || address.isLinkLocalAddress()
+                || address.isSiteLocalAddress())
+            return true;
+        byte[] bytes = address.getAddress();
+        if (bytes.length == 16)
+            // unique local addresses, fc00::/7; isSiteLocalAddress() only knows fec0::/10
+            return (bytes[0] & 0xfe) == 0xfc;
+        // shared address space of carrier-grade NAT, 100.64.0.0/10
+        return (bytes[0] & 0xff) == 100 && (bytes[1] & 0xc0) == 64;
+    }
+
+    /**
+     * Starts checking {@code host} unless a verdict is cached or a check is already running.
+     *
+     * @param callback Called on the main thread with the verdict, or {@code null}
+     */
+    Future<AntiSpoofingValidator.ValidationResult> check(String host, Callback callback) {
+        Ticket ticket = new Ticket(host, callback);
+        synchronized (this) {
+            Verdict verdict = verdicts.get(host);
+            if (verdict != null && verdict.expiresAt > clock.elapsedRealtime())
+                return completed(verdict.result, callback);
+            Check check = inFlight.get(host);
+            if (check == null) {
+                check = new Check(host);
+                inFlight.put(host, check);
+                executor.execute(check);
+            }
+            check.tickets.add(ticket);
+        }
+        return ticket;
+    }
+
+    /**
+     * @return a future already holding {@code result}; {@code callback} is still called on the
+     *         main thread, later
+     */
+    Future<AntiSpoofingValidator.ValidationResult> completed(final AntiSpoofingValidator.ValidationResult result, final Callback callback) {
+        FutureTask<AntiSpoofingValidator.ValidationResult> future = new FutureTask<>(new Callable<AntiSpoofingValidator.ValidationResult>() {
+            @Override
+            public AntiSpoofingValidator.ValidationResult call() {
+                return result;
+            }
+        });
+        future.run();
+        if (callback != null)
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onChecked(result);
+                }
+            });
+        return future;
+    }
+
+    /**
+     * @return the tickets waiting for {@code check}
+     */
+    private synchronized List<Ticket> onChecked(Check check, Verdict verdict, long stamp) {
+        inFlight.remove(check.host);
+        if (verdict != null && stamp == generation)
+            verdicts.put(check.host, verdict);
+        return check.tickets;
+    }
+
+    private synchronized long getGeneration() {
+        return generation;
+    }
+
+    private synchronized Set<InetAddress> getPins(String host) {
+        return pins.get(host);
+    }
+
+    private Verdict resolveAndCompare(String host) {
+        long now = clock.elapsedRealtime();
+        Answer answer;
+        try {
+            answer = resolver.resolve(host);
+        } catch (UnknownHostException e) {
+            return new Verdict(fail("Domain " + host + " does not resolve"), now + NEGATIVE_TTL_MILLIS);
+        }
+        long expiresAt = now + Math.min(answer.ttlMillis, MAX_TTL_MILLIS);
+        if (answer.addresses.isEmpty())
+            return new Verdict(fail("Domain " + host + " resolved to no address"), expiresAt);
+        Set<InetAddress> pinned = getPins(host);
+        for (InetAddress address : answer.addresses) {
+            if (pinned != null && !pinned.contains(address))
+                return new Verdict(fail("Domain " + host + " resolved to " + address.getHostAddress()
+                    + ", which is not pinned - potential DNS spoofing"), expiresAt);
+            if (pinned == null && isNonPublicAddress(address))
+                return new Verdict(fail("Domain " + host + " resolved to local address " + address.getHostAddress()
+                    + " - potential DNS spoofing or rebinding"), expiresAt);
+        }
+        Log.d(TAG, host + " resolved to " + answer.addresses.size() + " consistent addresses");
+        return new Verdict(new AntiSpoofingValidator.ValidationResult(true,
+            pinned != null ? "DNS answer for " + host + " matches its pinned addresses"
+                : "DNS answer for " + host + " contains public addresses only",
+            AntiSpoofingValidator.SpoofingType.DNS), expiresAt);
+    }
+
+    private static AntiSpoofingValidator.ValidationResult fail(String message) {
+        return new AntiSpoofingValidator.ValidationResult(false, message, AntiSpoofingValidator.SpoofingType.DNS);
+    }
+
+    private final class Check implements Runnable {
+
+        final String host;
+        // guarded by DnsConsistencyChecker.this; handed over once the check finished
+        final List<Ticket> tickets = new ArrayList<>();
+
+        Check(String host) {
+            this.host = host;
+        }
+
+        @Override
+        public void run() {
+            Verdict verdict = null;
+            long stamp = -1;
+            AntiSpoofingValidator.ValidationResult result;
+            try {
+                int attempt = 0;
+                do {
+                    stamp = getGeneration();
+                    verdict = resolveAndCompare(host);
+                } while (++attempt < MAX_LOOKUP_ATTEMPTS && stamp != getGeneration());
+                result = verdict.result;
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Could not check " + host, e);
+                verdict = null;
+                result = fail("DNS validation error: " + e.getMessage());
+            }
+            for (Ticket ticket : onChecked(this, verdict, stamp))
+                ticket.deliver(result);
+        }
+    }
+
+    /**
+     * One caller's view of a {@link Check}; cancelling it only drops that caller's interest.
+     */
+    private final class Ticket extends FutureTask<AntiSpoofingValidator.ValidationResult> {
+
+        private final String host;
+        private final Callback callback;
+
+        Ticket(String host, Callback callback) {
+            super(NOTHING, null);
+            this.host = host;
+            this.callback = callback;
+        }
+
+        void deliver(AntiSpoofingValidator.ValidationResult result) {
+            set(result);
+        }
+
+        @Override
+        protected void done() {
+            // a caller that cancelled, e.g. because its screen went away, wants no answer
+            if (callback == null || isCancelled())
+                return;
+            final AntiSpoofingValidator.ValidationResult result = getResult();
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onChecked(result);
+                }
+            });
+        }
+
+        // Only called once done and not cancelled, so get() returns at once
+        private AntiSpoofingValidator.ValidationResult getResult() {
+            try {
+                return get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return fail("DNS validation of " + host + " was interrupted");
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Could not check " + host, e.getCause());
+                return fail("DNS validation error: " + e.getCause().getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.dynamixsoftware.printingsample;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DocumentCache - Byte-bounded cache directory shared by extracted documents, thumbnails and
+ * print spools.
+ *
+ * Each user of the cache writes into its own area (a subdirectory) and reports the files it
+ * writes and reads. Files are kept in least-recently-used order, and once the total size exceeds
+ * the budget the least recently used files are deleted. Files referenced by a running job are
+ * pinned and never evicted until unpinned.
+ *
+ * The index is rebuilt from the directory on first use, ordered by modification time, so files
+ * left over by an earlier process are accounted for and evicted first.
+ */
+class DocumentCache {
+
+    private static final String TAG = "DocumentCache";
+
+    static final String AREA_DOCUMENTS = "documents";
+    static final String AREA_THUMBNAILS = "thumbnails";
+    static final String AREA_SPOOL = "spool";
+
+    private static final long DEFAULT_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    private final File root;
+    private final long budgetBytes;
+
+    // guarded by this
+    private final LinkedHashMap<File, Long> sizes = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<File, Integer> pins = new HashMap<>();
+    private boolean indexed;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long evictedBytes;
+
+    DocumentCache(Context context) {
+        this(getRoot(context), DEFAULT_BUDGET_BYTES);
+    }
+
+    DocumentCache(File root, long budgetBytes) {
+        this.root = root;
+        this.budgetBytes = budgetBytes;
+    }
+
+    private static File getRoot(Context context) {
+        File dir = context.getExternalCacheDir();
+        return dir != null ? dir : context.getCacheDir();
+    }
+
+    File getDirectory(String area) {
+        File dir = new File(root, area);
+        if (!dir.isDirectory() && !dir.mkdirs())
+            Log.w(TAG, "Could not create " + dir);
+        return dir;
+    }
+
+    /**
+     * Records a file just written to the cache, evicting older files if the budget is exceeded.
+     */
+    synchronized void onWritten(File file) {
+        ensureIndexed();
+        Long previous = sizes.remove(file);
+        if (previous != null)
+            usedBytes -= previous;
+        long size = file.length();
+        sizes.put(file, size);
+        usedBytes += size;
+        trim();
+    }
+
+    /**
+     * Records a read of {@code file}.
+     *
+     * @return {@code false} if the file is no longer in the cache and must be written again
+     */
+    synchronized boolean onAccessed(File file) {
+        ensureIndexed();
+        if (sizes.get(file) != null && file.isFile()) {
+            hits++;
+            return true;
+        }
+        misses++;
+        Long size = sizes.remove(file);
+        if (size != null)
+            usedBytes -= size;
+        return false;
+    }
+
+    /**
+     * Protects {@code file} from eviction until the matching {@link #unpin(File)}; pins nest.
+     */
+    synchronized void pin(File file) {
+        Integer count = pins.get(file);
+        pins.put(file, count != null ? count + 1 : 1);
+    }
+
+    synchronized void unpin(File file) {
+        Integer count = pins.get(file);
+        if (count == null)
+            return;
+        if (count > 1)
+            pins.put(file, count - 1);
+        else {
+            pins.remove(file);
+            trim();
+        }
+    }
+
+    synchronized long getUsedBytes() {
+        ensureIndexed();
+        return usedBytes;
+    }
+
+    long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * @return usage and eviction counters, e.g. {"usedBytes":1234,"budgetBytes":67108864,
+     * "files":3,"pinned":1,"hits":10,"misses":2,"evictions":0,"evictedBytes":0}
+     */
+    synchronized JSONObject snapshot() {
+        ensureIndexed();
+        JSONObject snapshot = new JSONObject();
+        try {
+            snapshot.put("usedBytes", usedBytes);
+            snapshot.put("budgetBytes", budgetBytes);
+            snapshot.put("files", sizes.size());
+            snapshot.put("pinned", pins.size());
+            snapshot.put("hits", hits);
+            snapshot.put("misses", misses);
+            snapshot.put("evictions", evictions);
+            snapshot.put("evictedBytes", evictedBytes);
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not build snapshot", e);
+        }
+        return snapshot;
+    }
+
+    private void trim() {
+        if (usedBytes <= budgetBytes)
+            return;
+        Iterator<Map.Entry<File, Long>> iterator = sizes.entrySet().iterator();
+        while (usedBytes > budgetBytes && iterator.hasNext()) {
+            Map.Entry<File, Long> entry = iterator.next();
+            File file = entry.getKey();
+            if (pins.containsKey(file))
+                continue;
+            if (file.delete() || !file.exists()) {
+                iterator.remove();
+                usedBytes -= entry.getValue();
+                evictions++;
+                evictedBytes += entry.getValue();
+                Log.d(TAG, "Evicted " + file.getName() + ", " + entry.getValue() + " bytes");
+            }
+        }
+        if (usedBytes > budgetBytes)
+            Log.w(TAG, "Over budget by " + (usedBytes - budgetBytes) + " bytes, the rest is pinned");
+    }
+
+    private void ensureIndexed() {
+        if (indexed)
+            return;
+        indexed = true;
+        List<File> files = new ArrayList<>();
+        collect(root, files);
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            long size = file.length();
+            sizes.put(file, size);
+            usedBytes += size;
+        }
+        trim();
+    }
+
+    private static void collect(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null)
+            return;
+        for (File child : children)
+            if (child.isDirectory())
+                collect(child, files);
+            else
+                files.add(child);
+    }
+}
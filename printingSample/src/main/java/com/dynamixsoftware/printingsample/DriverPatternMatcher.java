@@ -0,0 +1,201 @@
+package com.dynamixsoftware.printingsample;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * DriverPatternMatcher - Aho-Corasick automaton over a list of suspicious driver name patterns,
+ * finding every pattern a name contains in one pass over the name however many patterns there
+ * are.
+ *
+ * Matching is case-insensitive without lowercasing the name: patterns are lowercased when the
+ * automaton is built, and each character of the name is lowercased as it is read, the way
+ * {@code toLowerCase(Locale.ROOT)} would lowercase it. Of all patterns a name contains,
+ * {@link #findFirst(String)} reports the one listed first, as checking the patterns one by one
+ * with {@code contains()} did.
+ *
+ * Transitions of all states are kept in one open-addressing table keyed by state and character.
+ * Each state also holds the first-listed pattern ending there or at any state its failure links
+ * lead to, so a scan reads one value per character. A matcher is immutable once built and safe
+ * to share between threads; a new pattern feed is applied by building a new matcher.
+ */
+class DriverPatternMatcher {
+
+    private static final String TAG = "DriverPatternMatcher";
+
+    private static final int NO_PATTERN = Integer.MAX_VALUE;
+
+    private final String[] patterns;
+    // transition table: key is state << 16 | char, target 0 marks an empty slot (the root is
+    // never a target)
+    private long[] keys = new long[64];
+    private int[] targets = new int[64];
+    private int transitionCount;
+    // per state: failure link and the index of the first-listed pattern it reports
+    private int[] failures;
+    private int[] outputs;
+    private int stateCount = 1;
+
+    /**
+     * @param patterns Patterns in priority order; empty ones, which every name would contain,
+     *                 and repeated ones are skipped
+     */
+    DriverPatternMatcher(List<String> patterns) {
+        List<String> kept = new ArrayList<>();
+        int[] depths = new int[16];
+        outputs = new int[16];
+        outputs[0] = NO_PATTERN;
+        for (String pattern : patterns) {
+            pattern = pattern.trim().toLowerCase(Locale.ROOT);
+            if (pattern.isEmpty()) {
+                Log.w(TAG, "Skipping empty pattern");
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int next = getTarget(state, pattern.charAt(i));
+                if (next == 0) {
+                    if (stateCount == outputs.length) {
+                        outputs = grow(outputs);
+                        depths = grow(depths);
+                    }
+                    next = stateCount++;
+                    outputs[next] = NO_PATTERN;
+                    depths[next] = i + 1;
+                    putTarget(state, pattern.charAt(i), next);
+                }
+                state = next;
+            }
+            if (outputs[state] == NO_PATTERN) {
+                outputs[state] = kept.size();
+                kept.add(pattern);
+            }
+        }
+        this.patterns = kept.toArray(new String[kept.size()]);
+        buildFailures(depths);
+    }
+
+    int size() {
+        return patterns.length;
+    }
+
+    /**
+     * @return the first-listed pattern occurring in {@code name}, ignoring case, or {@code null}
+     *         if it contains none
+     */
+    String findFirst(String name) {
+        int state = 0;
+        int first = NO_PATTERN;
+        for (int i = 0; i < name.length() && first > 0; i++) {
+            char c = name.charAt(i);
+            if (c == '\u0130') {
+                // the one character lowercasing turns into two: 'i' and a combining dot above.
+                // The only other difference, a final capital sigma, never occurs in driver names
+                state = step(state, 'i');
+                first = Math.min(first, outputs[state]);
+                c = '\u0307';
+            } else {
+                c = Character.toLowerCase(c);
+            }
+            state = step(state, c);
+            first = Math.min(first, outputs[state]);
+        }
+        return first == NO_PATTERN ? null : patterns[first];
+    }
+
+    private int step(int state, char c) {
+        while (true) {
+            int next = getTarget(state, c);
+            if (next != 0)
+                return next;
+            if (state == 0)
+                return 0;
+            state = failures[state];
+        }
+    }
+
+    // States are numbered in creation order, which is not breadth-first, so they are visited
+    // by depth: a state's failure link always points to a shallower state
+    private void buildFailures(int[] depths) {
+        failures = new int[stateCount];
+        int maxDepth = 0;
+        for (int state = 1; state < stateCount; state++)
+            maxDepth = Math.max(maxDepth, depths[state]);
+        // counting sort of the states by depth
+        int[] starts = new int[maxDepth + 2];
+        for (int state = 1; state < stateCount; state++)
+            starts[depths[state] + 1]++;
+        for (int depth = 1; depth <= maxDepth + 1; depth++)
+            starts[depth] += starts[depth - 1];
+        int[] byDepth = new int[stateCount - 1];
+        for (int state = 1; state < stateCount; state++)
+            byDepth[starts[depths[state]]++] = state;
+        // parents and the characters leading to each state, from the transition table
+        int[] parents = new int[stateCount];
+        char[] labels = new char[stateCount];
+        for (int i = 0; i < keys.length; i++)
+            if (targets[i] != 0) {
+                parents[targets[i]] = (int) (keys[i] >>> 16);
+                labels[targets[i]] = (char) keys[i];
+            }
+        for (int state : byDepth) {
+            int parent = parents[state];
+            int failure = parent == 0 ? 0 : step(failures[parent], labels[state]);
+            failures[state] = failure;
+            outputs[state] = Math.min(outputs[state], outputs[failure]);
+        }
+    }
+
+    private int getTarget(int state, char c) {
+        long key = (long) state << 16 | c;
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); targets[i] != 0; i = (i + 1) & mask)
+            if (keys[i] == key)
+                return targets[i];
+        return 0;
+    }
+
+    private void putTarget(int state, char c, int target) {
+        // keep the table at most half full so probes stay short and always end
+        if ((transitionCount + 1) * 2 > keys.length)
+            resize(keys.length * 2);
+        long key = (long) state << 16 | c;
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (targets[i] != 0)
+            i = (i + 1) & mask;
+        keys[i] = key;
+        targets[i] = target;
+        transitionCount++;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldTargets = targets;
+        keys = new long[capacity];
+        targets = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++)
+            if (oldTargets[j] != 0) {
+                int i = slot(oldKeys[j], mask);
+                while (targets[i] != 0)
+                    i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                targets[i] = oldTargets[j];
+            }
+    }
+
+    // Fibonacci hashing, since the state and character are dense small numbers
+    private static int slot(long key, int mask) {
+        return (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] newArray = new int[array.length * 2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+}
@@ -0,0 +1,200 @@
+package com.dynamixsoftware.printingsample;
+
+import android.os.Parcel;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.dynamixsoftware.printingsdk.DriverHandleEntry;
+import com.dynamixsoftware.printingsdk.IGetDriversListener;
+import com.dynamixsoftware.printingsdk.Printer;
+import com.dynamixsoftware.printingsdk.PrintingSdk;
+import com.dynamixsoftware.printingsdk.TransportType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * DriverPlanner - Resolves drivers for every transport type of a printer in one async call.
+ *
+ * {@code getDriversList} is issued for all transport types at once instead of one after the
+ * other. Results are gathered until a deadline, then the transports that produced drivers are
+ * ranked by expected throughput (wired and raw IP first, cloud last). Results are read from and
+ * written to the {@link DriverResolutionCache}, so a known model costs no remote call at all.
+ */
+class DriverPlanner {
+
+    private static final String TAG = "DriverPlanner";
+
+    /**
+     * Fragments of transport names, fastest first. Unknown transports rank after all of these.
+     */
+    private static final String[] THROUGHPUT_ORDER = {
+            "usb", "raw", "ethernet", "wifi", "wi-fi", "ip", "lpd", "smb", "bluetooth", "cloud"
+    };
+
+    interface Callback {
+        void onPlanReady(DriverPlan plan);
+    }
+
+    /** One transport of the printer together with the drivers found for it. */
+    static final class Candidate {
+        final TransportType transportType;
+        final List<DriverHandleEntry> driverHandles;
+
+        Candidate(TransportType transportType, List<DriverHandleEntry> driverHandles) {
+            this.transportType = transportType;
+            this.driverHandles = driverHandles;
+        }
+    }
+
+    /** Ranked driver plan: {@link #candidates} is ordered from fastest to slowest transport. */
+    static final class DriverPlan {
+        final Printer printer;
+        final List<Candidate> candidates;
+        final int timedOut;
+        final long elapsedMs;
+
+        DriverPlan(Printer printer, List<Candidate> candidates, int timedOut, long elapsedMs) {
+            this.printer = printer;
+            this.candidates = Collections.unmodifiableList(candidates);
+            this.timedOut = timedOut;
+            this.elapsedMs = elapsedMs;
+        }
+
+        /**
+         * @return the fastest transport with at least one driver, or {@code null} if none answered
+         */
+        Candidate best() {
+            return candidates.isEmpty() ? null : candidates.get(0);
+        }
+    }
+
+    private final PrintingSdk printingSdk;
+    private final DriverResolutionCache cache;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    DriverPlanner(PrintingSdk printingSdk, DriverResolutionCache cache) {
+        this.printingSdk = printingSdk;
+        this.cache = cache;
+    }
+
+    /**
+     * Queries all transport types of the printer concurrently. The callback is invoked on a
+     * background thread once every query finished or the deadline passed, whichever comes first.
+     */
+    void plan(final Printer printer, final long deadlineMs, final Callback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onPlanReady(resolve(printer, deadlineMs));
+            }
+        });
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private DriverPlan resolve(final Printer printer, long deadlineMs) {
+        long start = SystemClock.elapsedRealtime();
+        final List<TransportType> transportTypes = printer.getTransportTypes();
+        final AtomicReferenceArray<List<DriverHandleEntry>> results = new AtomicReferenceArray<>(transportTypes.size());
+        final CountDownLatch latch = new CountDownLatch(transportTypes.size());
+        for (int i = 0; i < transportTypes.size(); i++) {
+            final int index = i;
+            final TransportType transportType = transportTypes.get(i);
+            List<DriverHandleEntry> cached = cache.getDriverHandles(printer, transportType);
+            if (cached != null) {
+                results.set(index, cached);
+                latch.countDown();
+                continue;
+            }
+            try {
+                printingSdk.getDriversList(printer, transportType, new IGetDriversListener.Stub() {
+                    @Override
+                    public void start() {
+                    }
+
+                    @Override
+                    public void finish(List<DriverHandleEntry> arg0) {
+                        results.set(index, arg0);
+                        cache.putDriverHandles(printer, transportType, arg0);
+                        latch.countDown();
+                    }
+                });
+            } catch (RemoteException e) {
+                e.printStackTrace();
+                latch.countDown();
+            }
+        }
+        try {
+            latch.await(deadlineMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        int timedOut = 0;
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < transportTypes.size(); i++) {
+            List<DriverHandleEntry> handles = results.get(i);
+            if (handles == null)
+                timedOut++;
+            else if (!handles.isEmpty())
+                candidates.add(new Candidate(transportTypes.get(i), handles));
+        }
+        // Stable sort: transports of equal rank keep the order reported by the SDK
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                return throughputRank(a.transportType) - throughputRank(b.transportType);
+            }
+        });
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        Log.d(TAG, printer.getName() + ": " + candidates.size() + " transports with drivers, "
+                + timedOut + " timed out, " + elapsed + " ms");
+        return new DriverPlan(printer, candidates, timedOut, elapsed);
+    }
+
+    static int throughputRank(TransportType transportType) {
+        return rank(parcelText(transportType));
+    }
+
+    /**
+     * The SDK accessors the sample relies on give a transport no name, so it is ranked on the
+     * text it carries across the binder: its marshalled form read as UTF-16, the encoding of
+     * strings in a {@link Parcel}, with everything but letters, digits and '-' blanked out.
+     */
+    private static String parcelText(TransportType transportType) {
+        byte[] bytes;
+        Parcel parcel = Parcel.obtain();
+        try {
+            transportType.writeToParcel(parcel, 0);
+            bytes = parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+        StringBuilder text = new StringBuilder(bytes.length / 2);
+        for (int i = 0; i + 1 < bytes.length; i += 2) {
+            char c = (char) ((bytes[i] & 0xff) | (bytes[i + 1] & 0xff) << 8);
+            text.append(Character.isLetterOrDigit(c) || c == '-' ? c : ' ');
+        }
+        return text.toString();
+    }
+
+    private static int rank(String transport) {
+        transport = transport.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < THROUGHPUT_ORDER.length; i++)
+            if (transport.contains(THROUGHPUT_ORDER[i]))
+                return i;
+        return THROUGHPUT_ORDER.length;
+    }
+}
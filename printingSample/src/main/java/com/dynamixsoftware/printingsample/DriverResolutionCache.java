@@ -0,0 +1,186 @@
+package com.dynamixsoftware.printingsample;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.Parcel;
+import android.util.Base64;
+import android.util.Log;
+
+import com.dynamixsoftware.printingsdk.DriverHandleEntry;
+import com.dynamixsoftware.printingsdk.DriversSearchEntry;
+import com.dynamixsoftware.printingsdk.Printer;
+import com.dynamixsoftware.printingsdk.TransportType;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DriverResolutionCache - Cache of driver search results keyed by printer model.
+ *
+ * {@code findDrivers} and {@code getDriversList} run a full driver search every time, although
+ * the answer for a given model and transport does not change between runs. Results are kept in
+ * memory for the life of the process, shared by all screens:
+ *   - findDrivers    : {@link DriversSearchEntry} list keyed by model
+ *   - getDriversList : {@link DriverHandleEntry} list keyed by model and transport
+ *
+ * The SDK accessors the sample has always used give no model and no textual transport identity.
+ * A printer's name stands for its model, as it does for the Intent API profiles. A transport is
+ * keyed by its marshalled form, which only ever serves as an in-memory key.
+ *
+ * The SDK entries themselves can only be created by the SDK and are never persisted. What is
+ * persisted to {@link SharedPreferences} is one explicit record per model whose drivers were
+ * resolved, written as JSON with the last printer name seen. It survives restarts so that library
+ * packs for known models can be prefetched before their first print.
+ *
+ * The persisted facts are stamped with the install time of the PrintHand packages and a format
+ * version, and dropped as soon as either changes. Driver results are dropped once a library pack
+ * installation finished.
+ */
+class DriverResolutionCache {
+
+    private static final String TAG = "DriverResolutionCache";
+
+    private static final String PREFS_NAME = "driver_resolution_cache";
+    private static final String KEY_VERSION = "version";
+    private static final String PREFIX_MODEL = "model|";
+    private static final String FIELD_NAME = "name";
+
+    /** Bump when the layout of the persisted records changes. */
+    private static final int FORMAT_VERSION = 3;
+
+    /** Packages shipping the driver library packs, see {@code <queries>} in the manifest. */
+    private static final String[] PRINT_HAND_PACKAGES = {
+            "com.dynamixsoftware.printhand",
+            "com.dynamixsoftware.printhand.premium",
+            "com.dynamixsoftware.printhand.service"
+    };
+
+    private final SharedPreferences preferences;
+
+    private final Map<String, List<DriversSearchEntry>> searchEntries = new HashMap<>();
+    private final Map<String, List<DriverHandleEntry>> driverHandles = new HashMap<>();
+
+    DriverResolutionCache(Context context) {
+        preferences = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String version = computeVersion(context.getPackageManager());
+        if (!version.equals(preferences.getString(KEY_VERSION, null))) {
+            Log.i(TAG, "PrintHand components changed, dropping known models");
+            preferences.edit().clear().putString(KEY_VERSION, version).apply();
+        }
+    }
+
+    /**
+     * @return cached {@code findDrivers} result for the printer model, or {@code null} on miss
+     */
+    synchronized List<DriversSearchEntry> getSearchEntries(Printer printer) {
+        return searchEntries.get(modelKey(printer));
+    }
+
+    synchronized void putSearchEntries(Printer printer, List<DriversSearchEntry> entries) {
+        if (entries == null || entries.isEmpty())
+            return; // nothing found may be transient, e.g. library pack not downloaded yet
+        String model = modelKey(printer);
+        searchEntries.put(model, Collections.unmodifiableList(new ArrayList<>(entries)));
+        remember(model, printer.getName());
+    }
+
+    /**
+     * @return cached {@code getDriversList} result for the model and transport, or {@code null} on miss
+     */
+    synchronized List<DriverHandleEntry> getDriverHandles(Printer printer, TransportType transportType) {
+        return driverHandles.get(modelKey(printer) + '|' + transportKey(transportType));
+    }
+
+    synchronized void putDriverHandles(Printer printer, TransportType transportType, List<DriverHandleEntry> handles) {
+        if (handles == null || handles.isEmpty())
+            return;
+        String model = modelKey(printer);
+        driverHandles.put(model + '|' + transportKey(transportType), Collections.unmodifiableList(new ArrayList<>(handles)));
+        remember(model, printer.getName());
+    }
+
+    /**
+     * @return models whose drivers were resolved before, including in earlier runs
+     */
+    synchronized Set<String> getKnownModels() {
+        Set<String> models = new HashSet<>();
+        for (String key : preferences.getAll().keySet())
+            if (key.startsWith(PREFIX_MODEL))
+                models.add(key.substring(PREFIX_MODEL.length()));
+        return models;
+    }
+
+    /**
+     * @return stamp of the installed PrintHand components the persisted facts belong to
+     */
+    String getVersion() {
+        return preferences.getString(KEY_VERSION, "");
+    }
+
+    /**
+     * Drops every cached driver result. Call once a library pack installation finished, since
+     * new drivers may now match models that were resolved before. Known models are kept.
+     */
+    synchronized void onLibraryPacksChanged() {
+        if (searchEntries.isEmpty() && driverHandles.isEmpty())
+            return;
+        Log.i(TAG, "Library packs changed, dropping cached drivers");
+        searchEntries.clear();
+        driverHandles.clear();
+    }
+
+    /**
+     * @return the key of the printer's model: its name, the one identity the SDK reliably reports
+     */
+    static String modelKey(Printer printer) {
+        return String.valueOf(printer.getName());
+    }
+
+    /**
+     * @return the marshalled form of {@code transportType}; in-memory key only, never persisted
+     */
+    static String transportKey(TransportType transportType) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            transportType.writeToParcel(parcel, 0);
+            return Base64.encodeToString(parcel.marshall(), Base64.NO_WRAP);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private void remember(String model, String printerName) {
+        JSONObject record = new JSONObject();
+        try {
+            record.put(FIELD_NAME, printerName);
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not record model " + model, e);
+            return;
+        }
+        String json = record.toString();
+        if (!json.equals(preferences.getString(PREFIX_MODEL + model, null)))
+            preferences.edit().putString(PREFIX_MODEL + model, json).apply();
+    }
+
+    private static String computeVersion(PackageManager packageManager) {
+        StringBuilder version = new StringBuilder().append(FORMAT_VERSION).append(';');
+        for (String packageName : PRINT_HAND_PACKAGES) {
+            try {
+                version.append(packageManager.getPackageInfo(packageName, 0).lastUpdateTime);
+            } catch (PackageManager.NameNotFoundException e) {
+                version.append('-');
+            }
+            version.append(';');
+        }
+        return version.toString();
+    }
+}
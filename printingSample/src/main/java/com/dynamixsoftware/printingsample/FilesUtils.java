@@ -1,46 +1,140 @@
 package com.dynamixsoftware.printingsample;
 
 import android.content.Context;
-import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
 import android.content.res.AssetManager;
 import android.net.Uri;
-
-import androidx.core.content.FileProvider;
+import android.os.Handler;
+import android.os.Looper;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 class FilesUtils {
 
+    interface FileCallback {
+        /**
+         * Called on the main thread with the extracted file.
+         */
+        void onFile(File file);
+    }
+
     static final String FILE_PNG = "test_page.png";
     static final String FILE_DOC = "What is PrintHand.doc";
     static final String FILE_PDF = "What is PrintHand.pdf";
 
-    static void extractFilesFromAssets(Context context) {
-        AssetManager assetManager = context.getAssets();
-        File dir = getFilesDir(context);
-        for (String filename : new String[]{FILE_PNG, FILE_DOC, FILE_PDF})
-            extractFileFromAssets(assetManager, dir, filename);
+    private static final String MANIFEST_PREFS_NAME = "extracted_assets";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ExecutorService IO_EXECUTOR = Executors.newSingleThreadExecutor();
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    // guarded by itself
+    private static final Map<String, Future<File>> MATERIALIZED = new HashMap<>();
+
+    /**
+     * Starts extracting {@code filename} on the I/O executor unless it is already extracted or
+     * being extracted; concurrent requests share one extraction.
+     */
+    static Future<File> materialize(Context context, final String filename) {
+        final Context appContext = context.getApplicationContext();
+        synchronized (MATERIALIZED) {
+            Future<File> future = MATERIALIZED.get(filename);
+            if (future != null) {
+                if (!future.isDone())
+                    return future;
+                // extracted before, unless it failed or was evicted from the cache since
+                File file = getQuietly(future);
+                if (file != null && PrintingSampleApplication.getDocumentCache(appContext).onAccessed(file))
+                    return future;
+            }
+            future = IO_EXECUTOR.submit(new Callable<File>() {
+                @Override
+                public File call() {
+                    return extractFileFromAssets(appContext, filename);
+                }
+            });
+            MATERIALIZED.put(filename, future);
+            return future;
+        }
+    }
+
+    private static File getQuietly(Future<File> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Extracts {@code filename} unless the extracted copy is up to date.
+     *
+     * @return extracted file, or {@code null} if it could not be extracted
+     */
+    private static File extractFileFromAssets(Context context, String filename) {
+        File outFile = new File(getFilesDir(context), filename);
+        // Assets only change with the APK, so its install time versions every extracted copy
+        SharedPreferences manifest = context.getSharedPreferences(MANIFEST_PREFS_NAME, Context.MODE_PRIVATE);
+        String version = getApkVersion(context);
+        String entry = manifest.getString(filename, null);
+        DocumentCache cache = PrintingSampleApplication.getDocumentCache(context);
+        if (entry != null && entry.equals(version + '|' + outFile.length()) && cache.onAccessed(outFile))
+            return outFile;
+        long size = extractFileFromAssets(context.getAssets(), outFile);
+        if (size >= 0) {
+            manifest.edit().putString(filename, version + '|' + size).apply();
+            cache.onWritten(outFile);
+            return outFile;
+        }
+        manifest.edit().remove(filename).apply();
+        return null;
     }
 
-    private static void extractFileFromAssets(AssetManager assetManager, File dir, String filename) {
+    private static String getApkVersion(Context context) {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return info.lastUpdateTime + ":" + info.versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Copies the asset to a temporary file renamed over {@code outFile} once complete, so an
+     * interrupted copy never looks extracted.
+     *
+     * @return size of the extracted file, or -1 if it could not be extracted
+     */
+    private static long extractFileFromAssets(AssetManager assetManager, File outFile) {
+        File tmpFile = new File(outFile.getParentFile(), outFile.getName() + ".tmp");
         InputStream inputStream = null;
         OutputStream outputStream = null;
         try {
+            long size = 0;
             try {
-                inputStream = assetManager.open(filename);
-                File outFile = new File(dir, filename);
-                if (outFile.exists())
-                    outFile.delete();
-                outFile.createNewFile();
-                outputStream = new FileOutputStream(outFile);
-                byte[] buffer = new byte[1024];
+                inputStream = assetManager.open(outFile.getName());
+                outputStream = new FileOutputStream(tmpFile);
+                byte[] buffer = new byte[BUFFER_SIZE];
                 int read;
-                while ((read = inputStream.read(buffer)) != -1)
+                while ((read = inputStream.read(buffer)) != -1) {
                     outputStream.write(buffer, 0, read);
+                    size += read;
+                }
                 outputStream.flush();
             } finally {
                 if (inputStream != null)
@@ -48,8 +142,16 @@ class FilesUtils {
                 if (outputStream != null)
                     outputStream.close();
             }
+            if (!tmpFile.renameTo(outFile)) {
+                outFile.delete();
+                if (!tmpFile.renameTo(outFile))
+                    throw new IOException("Could not rename " + tmpFile + " to " + outFile);
+            }
+            return size;
         } catch (IOException e) {
             e.printStackTrace();
+            tmpFile.delete();
+            return -1;
         }
     }
 
@@ -58,18 +160,49 @@ class FilesUtils {
         return file.exists() ? file.getAbsolutePath() : null;
     }
 
+    /**
+     * Returns the extracted file, extracting it first on the first request; the caller waits for
+     * the extraction, if any.
+     */
     static File getFile(Context context, String filename) {
-        return new File(getFilesDir(context), filename);
+        File file = getQuietly(materialize(context, filename));
+        return file != null ? file : new File(getFilesDir(context), filename);
+    }
+
+    /**
+     * Like {@link #getFile(Context, String)}, but waits for the extraction on the I/O executor
+     * and hands the file to {@code callback} on the main thread, so the main thread never blocks.
+     */
+    static void getFile(Context context, final String filename, final FileCallback callback) {
+        final Context appContext = context.getApplicationContext();
+        final Future<File> future = materialize(appContext, filename);
+        // the I/O executor runs one task at a time in order, so this runs once the extraction did
+        IO_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                File extracted = getQuietly(future);
+                final File file = extracted != null ? extracted : new File(getFilesDir(appContext), filename);
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onFile(file);
+                    }
+                });
+            }
+        });
     }
 
+    /**
+     * Returns a {@link SampleDocumentsProvider} URI of the asset readable by the installed
+     * PrintHand app. The asset is served from the APK and never extracted; the URI and its grant
+     * are memoized.
+     */
     static Uri getFileUriWithPermission(Context context, String filename) {
-        File file = FilesUtils.getFile(context, filename);
-        Uri uri = FileProvider.getUriForFile(context, "com.dynamixsoftware.printingsample.fileprovider", file);
-        context.grantUriPermission("com.dynamixsoftware.printhand", uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
-        return uri;
+        String packageName = PrintingSampleApplication.getPrintHandResolver(context).getTargetPackage();
+        return PrintingSampleApplication.getUriGrantCache(context).getAssetUri(filename, packageName);
     }
 
-    private static File getFilesDir(Context context) {
-        return context.getExternalCacheDir();
+    static File getFilesDir(Context context) {
+        return PrintingSampleApplication.getDocumentCache(context).getDirectory(DocumentCache.AREA_DOCUMENTS);
     }
 }
@@ -0,0 +1,171 @@
+package com.dynamixsoftware.printingsample;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.RemoteException;
+
+import com.dynamixsoftware.intentapi.IDocument;
+import com.dynamixsoftware.intentapi.IJob;
+import com.dynamixsoftware.intentapi.IPrintCallback;
+import com.dynamixsoftware.intentapi.IPrinterInfo;
+import com.dynamixsoftware.intentapi.IntentAPI;
+import com.dynamixsoftware.intentapi.PrintHandOption;
+import com.dynamixsoftware.intentapi.Result;
+
+import java.util.List;
+
+/**
+ * InstrumentedIntentAPI - {@link IntentAPI} that reports every remote call to a
+ * {@link SdkCallMonitor}.
+ *
+ * The print callback is wrapped so the result type of each finished job is counted as well.
+ */
+class InstrumentedIntentAPI extends IntentAPI {
+
+    private final SdkCallMonitor monitor;
+
+    InstrumentedIntentAPI(Context context, SdkCallMonitor monitor) {
+        super(context);
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void setPrintCallback(final IPrintCallback callback) throws RemoteException {
+        monitor.call("intentApi.setPrintCallback", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedIntentAPI.super.setPrintCallback(callback != null ? new PrintCallback(callback) : null);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public IPrinterInfo getCurrentPrinter() throws RemoteException {
+        return monitor.call("intentApi.getCurrentPrinter", new SdkCallMonitor.Call<IPrinterInfo>() {
+            @Override
+            public IPrinterInfo invoke() throws RemoteException {
+                return InstrumentedIntentAPI.super.getCurrentPrinter();
+            }
+        });
+    }
+
+    @Override
+    public void print(final IDocument document) throws RemoteException {
+        monitor.call("intentApi.printDocument", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedIntentAPI.super.print(document);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void print(final IJob job, final int copies) throws RemoteException {
+        monitor.call("intentApi.printJob", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedIntentAPI.super.print(job, copies);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void print(final String jobName, final String mimeType, final Uri uri) throws RemoteException {
+        monitor.call("intentApi.printUri", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedIntentAPI.super.print(jobName, mimeType, uri);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public List<PrintHandOption> getImagesOptions() throws RemoteException {
+        return monitor.call("intentApi.getImagesOptions", new SdkCallMonitor.Call<List<PrintHandOption>>() {
+            @Override
+            public List<PrintHandOption> invoke() throws RemoteException {
+                return InstrumentedIntentAPI.super.getImagesOptions();
+            }
+        });
+    }
+
+    @Override
+    public void setImagesOptions(final List<PrintHandOption> options) throws RemoteException {
+        monitor.call("intentApi.setImagesOptions", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedIntentAPI.super.setImagesOptions(options);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public List<PrintHandOption> getFilesOptions() throws RemoteException {
+        return monitor.call("intentApi.getFilesOptions", new SdkCallMonitor.Call<List<PrintHandOption>>() {
+            @Override
+            public List<PrintHandOption> invoke() throws RemoteException {
+                return InstrumentedIntentAPI.super.getFilesOptions();
+            }
+        });
+    }
+
+    @Override
+    public void setFilesOptions(final List<PrintHandOption> options) throws RemoteException {
+        monitor.call("intentApi.setFilesOptions", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedIntentAPI.super.setFilesOptions(options);
+                return null;
+            }
+        });
+    }
+
+    private class PrintCallback extends IPrintCallback.Stub {
+        private final IPrintCallback callback;
+
+        PrintCallback(IPrintCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void startingPrintJob() throws RemoteException {
+            callback.startingPrintJob();
+        }
+
+        @Override
+        public void start() throws RemoteException {
+            callback.start();
+        }
+
+        @Override
+        public void sendingPage(int pageNum, int progress) throws RemoteException {
+            callback.sendingPage(pageNum, progress);
+        }
+
+        @Override
+        public void preparePage(int pageNum) throws RemoteException {
+            callback.preparePage(pageNum);
+        }
+
+        @Override
+        public boolean needCancel() throws RemoteException {
+            return callback.needCancel();
+        }
+
+        @Override
+        public void finishingPrintJob() throws RemoteException {
+            callback.finishingPrintJob();
+        }
+
+        @Override
+        public void finish(Result result, int pagesPrinted) throws RemoteException {
+            monitor.recordResult("intentApi.print", result != null ? result.getType() : null);
+            callback.finish(result, pagesPrinted);
+        }
+    }
+}
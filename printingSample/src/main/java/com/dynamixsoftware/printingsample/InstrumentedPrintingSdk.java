@@ -0,0 +1,260 @@
+package com.dynamixsoftware.printingsample;
+
+import android.content.Context;
+import android.os.RemoteException;
+
+import com.dynamixsoftware.printingsdk.DriverHandleEntry;
+import com.dynamixsoftware.printingsdk.IDiscoverCloudListener;
+import com.dynamixsoftware.printingsdk.IDiscoverListener;
+import com.dynamixsoftware.printingsdk.IDiscoverSmb;
+import com.dynamixsoftware.printingsdk.IDiscoverSmbListener;
+import com.dynamixsoftware.printingsdk.IFindDriversListener;
+import com.dynamixsoftware.printingsdk.IGetDriversListener;
+import com.dynamixsoftware.printingsdk.IPage;
+import com.dynamixsoftware.printingsdk.IPrintListener;
+import com.dynamixsoftware.printingsdk.ISetupPrinterListener;
+import com.dynamixsoftware.printingsdk.Printer;
+import com.dynamixsoftware.printingsdk.PrinterOption;
+import com.dynamixsoftware.printingsdk.PrinterOptionValue;
+import com.dynamixsoftware.printingsdk.PrintingSdk;
+import com.dynamixsoftware.printingsdk.Result;
+import com.dynamixsoftware.printingsdk.TransportType;
+
+import java.util.List;
+
+/**
+ * InstrumentedPrintingSdk - {@link PrintingSdk} that reports every remote call to a
+ * {@link SdkCallMonitor}.
+ *
+ * Setup and print listeners are wrapped so the result type they finish with is counted as well.
+ */
+class InstrumentedPrintingSdk extends PrintingSdk {
+
+    private final SdkCallMonitor monitor;
+
+    InstrumentedPrintingSdk(Context context, SdkCallMonitor monitor) {
+        super(context);
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void initRecentPrinters(final ISetupPrinterListener listener) throws RemoteException {
+        monitor.call("printingSdk.initRecentPrinters", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedPrintingSdk.super.initRecentPrinters(new SetupListener("printingSdk.initRecentPrinters", listener));
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public Printer getCurrentPrinter() throws RemoteException {
+        return monitor.call("printingSdk.getCurrentPrinter", new SdkCallMonitor.Call<Printer>() {
+            @Override
+            public Printer invoke() throws RemoteException {
+                return InstrumentedPrintingSdk.super.getCurrentPrinter();
+            }
+        });
+    }
+
+    @Override
+    public List<Printer> getRecentPrintersList() throws RemoteException {
+        return monitor.call("printingSdk.getRecentPrintersList", new SdkCallMonitor.Call<List<Printer>>() {
+            @Override
+            public List<Printer> invoke() throws RemoteException {
+                return InstrumentedPrintingSdk.super.getRecentPrintersList();
+            }
+        });
+    }
+
+    @Override
+    public void startDiscoverWiFi(final IDiscoverListener listener) throws RemoteException {
+        monitor.call("printingSdk.startDiscoverWiFi", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedPrintingSdk.super.startDiscoverWiFi(listener);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void startDiscoverBluetooth(final IDiscoverListener listener) throws RemoteException {
+        monitor.call("printingSdk.startDiscoverBluetooth", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedPrintingSdk.super.startDiscoverBluetooth(listener);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void startDiscoverUSB(final IDiscoverListener listener) throws RemoteException {
+        monitor.call("printingSdk.startDiscoverUSB", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedPrintingSdk.super.startDiscoverUSB(listener);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void startDiscoverCloud(final String account, final IDiscoverCloudListener listener) throws RemoteException {
+        monitor.call("printingSdk.startDiscoverCloud", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedPrintingSdk.super.startDiscoverCloud(account, listener);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public IDiscoverSmb startDiscoverSmb(final IDiscoverSmbListener listener) throws RemoteException {
+        return monitor.call("printingSdk.startDiscoverSmb", new SdkCallMonitor.Call<IDiscoverSmb>() {
+            @Override
+            public IDiscoverSmb invoke() throws RemoteException {
+                return InstrumentedPrintingSdk.super.startDiscoverSmb(listener);
+            }
+        });
+    }
+
+    @Override
+    public void findDrivers(final Printer printer, final IFindDriversListener listener) throws RemoteException {
+        monitor.call("printingSdk.findDrivers", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedPrintingSdk.super.findDrivers(printer, listener);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void getDriversList(final Printer printer, final TransportType transportType, final IGetDriversListener listener) throws RemoteException {
+        monitor.call("printingSdk.getDriversList", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedPrintingSdk.super.getDriversList(printer, transportType, listener);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void setup(final Printer printer, final boolean forceInstall, final ISetupPrinterListener listener) throws RemoteException {
+        monitor.call("printingSdk.setup", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedPrintingSdk.super.setup(printer, forceInstall, new SetupListener("printingSdk.setup", listener));
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void setup(final Printer printer, final DriverHandleEntry driverHandle, final TransportType transportType, final boolean forceInstall, final ISetupPrinterListener listener) throws RemoteException {
+        monitor.call("printingSdk.setup", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedPrintingSdk.super.setup(printer, driverHandle, transportType, forceInstall, new SetupListener("printingSdk.setup", listener));
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void setCurrentPrinterOptionValue(final PrinterOption option, final PrinterOptionValue value) throws RemoteException {
+        monitor.call("printingSdk.setCurrentPrinterOptionValue", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedPrintingSdk.super.setCurrentPrinterOptionValue(option, value);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void print(final List<IPage> pages, final int copies, final IPrintListener listener) throws RemoteException {
+        monitor.call("printingSdk.print", new SdkCallMonitor.Call<Void>() {
+            @Override
+            public Void invoke() throws RemoteException {
+                InstrumentedPrintingSdk.super.print(pages, copies, new PrintListener(listener));
+                return null;
+            }
+        });
+    }
+
+    private class SetupListener extends ISetupPrinterListener.Stub {
+        private final String method;
+        private final ISetupPrinterListener listener;
+
+        SetupListener(String method, ISetupPrinterListener listener) {
+            this.method = method;
+            this.listener = listener;
+        }
+
+        @Override
+        public void start() throws RemoteException {
+            listener.start();
+        }
+
+        @Override
+        public void libraryPackInstallationProcess(int progress) throws RemoteException {
+            listener.libraryPackInstallationProcess(progress);
+        }
+
+        @Override
+        public void finish(Result result) throws RemoteException {
+            monitor.recordResult(method, result != null ? result.getType() : null);
+            listener.finish(result);
+        }
+    }
+
+    private class PrintListener extends IPrintListener.Stub {
+        private final IPrintListener listener;
+
+        PrintListener(IPrintListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void startingPrintJob() throws RemoteException {
+            listener.startingPrintJob();
+        }
+
+        @Override
+        public void start() throws RemoteException {
+            listener.start();
+        }
+
+        @Override
+        public void sendingPage(int pageNum, int progress) throws RemoteException {
+            listener.sendingPage(pageNum, progress);
+        }
+
+        @Override
+        public void preparePage(int pageNum) throws RemoteException {
+            listener.preparePage(pageNum);
+        }
+
+        @Override
+        public boolean needCancel() throws RemoteException {
+            return listener.needCancel();
+        }
+
+        @Override
+        public void finishingPrintJob() throws RemoteException {
+            listener.finishingPrintJob();
+        }
+
+        @Override
+        public void finish(Result result, int pagesTotal, int pagesSent) throws RemoteException {
+            monitor.recordResult("printingSdk.print", result != null ? result.getType() : null);
+            listener.finish(result, pagesTotal, pagesSent);
+        }
+    }
+}
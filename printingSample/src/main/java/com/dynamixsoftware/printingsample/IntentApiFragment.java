@@ -9,6 +9,7 @@ import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -35,99 +36,142 @@ import com.dynamixsoftware.intentapi.Result;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 public class IntentApiFragment extends Fragment implements View.OnClickListener {
 
+    private SdkConnection sdkConnection;
+    private SdkConnection.Listener connectionListener;
+    private SdkSupervisor sdkSupervisor;
+    private SdkSupervisor.Listener recoveryListener;
     private IntentAPI intentApi;
+    private IntentAPI uiIntentApi;
+    private PrintOptionProfiles printOptionProfiles;
 
     private Handler mainHandler = new Handler(Looper.getMainLooper());
 
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
-        intentApi = new IntentAPI(getActivity() != null ? getActivity() : context); // some features not worked if initialized without activity
+        sdkConnection = PrintingSampleApplication.getSdkConnection(context);
+        intentApi = sdkConnection.getIntentApi();
+        uiIntentApi = new IntentAPI(getActivity() != null ? getActivity() : context); // some features not worked if initialized without activity
         final Context appContext = context.getApplicationContext();
-        try {
-            intentApi.runService(new IServiceCallback.Stub() {
-                @Override
-                public void onServiceDisconnected() {
+        printOptionProfiles = PrintingSampleApplication.getPrintOptionProfiles(context);
+        connectionListener = new SdkConnection.Listener() {
+            @Override
+            public void onConnected(SdkConnection.Service service) {
+                if (service == SdkConnection.Service.INTENT_API)
+                    toastInMainThread(appContext, "Service connected");
+            }
+
+            @Override
+            public void onDisconnected(SdkConnection.Service service) {
+                if (service == SdkConnection.Service.INTENT_API)
                     toastInMainThread(appContext, "Service disconnected");
-                }
+            }
+        };
+        sdkConnection.addListener(connectionListener);
+        sdkConnection.setIntentApiCallback(new IServiceCallback.Stub() {
+            // connection changes are reported to connectionListener
+            @Override
+            public void onServiceDisconnected() {
+            }
 
-                @Override
-                public void onServiceConnected() {
-                    toastInMainThread(appContext, "Service connected");
-                    try {
-                        intentApi.setPrintCallback(new IPrintCallback.Stub() {
-                            @Override
-                            public void startingPrintJob() {
-                                toastInMainThread(appContext, "startingPrintJob");
-                            }
+            @Override
+            public void onServiceConnected() {
+            }
 
-                            @Override
-                            public void start() {
-                                toastInMainThread(appContext, "start");
-                            }
+            @Override
+            public void onFileOpen(int progress, int finished) {
+                toastInMainThread(appContext, "onFileOpen progress " + progress + "; finished " + (finished == 1));
+            }
 
-                            @Override
-                            public void sendingPage(int pageNum, int progress) {
-                                toastInMainThread(appContext, "sendingPage number " + pageNum + ", progress " + progress);
-                            }
+            @Override
+            public void onLibraryDownload(int progress) {
+                toastInMainThread(appContext, "onLibraryDownload progress " + progress);
+            }
 
-                            @Override
-                            public void preparePage(int pageNum) {
-                                toastInMainThread(appContext, "preparePage number " + pageNum);
-                            }
+            @Override
+            public boolean onRenderLibraryCheck(boolean renderLibrary, boolean fontLibrary) {
+                toastInMainThread(appContext, "onRenderLibraryCheck render library " + renderLibrary + "; fonts library " + fontLibrary);
+                return true;
+            }
 
-                            @Override
-                            public boolean needCancel() {
-                                toastInMainThread(appContext, "needCancel");
-                                // If you need to cancel printing send true
-                                return false;
-                            }
+            @Override
+            public String onPasswordRequired() {
+                toastInMainThread(appContext, "onPasswordRequired");
+                return "password";
+            }
 
-                            @Override
-                            public void finishingPrintJob() {
-                                toastInMainThread(appContext, "finishingPrintJob");
-                            }
+            @Override
+            public void onError(Result result) {
+                toastInMainThread(appContext, "error, Result " + result + "; Result type " + result.getType());
+            }
+        });
+        sdkConnection.whenReady(SdkConnection.Service.INTENT_API, new Runnable() {
+            @Override
+            public void run() {
+                if (isAdded())
+                    setPrintCallback(appContext);
+            }
+        });
+        sdkSupervisor = PrintingSampleApplication.getSdkSupervisor(context);
+        recoveryListener = new SdkSupervisor.Listener() {
+            @Override
+            public void onRecovered(SdkConnection.Service service, long latencyMs) {
+                if (service == SdkConnection.Service.INTENT_API) {
+                    // the restarted service lost the print callback and the options applied by the selected profile
+                    setPrintCallback(appContext);
+                    printOptionProfiles.invalidate();
+                    toastInMainThread(appContext, "Service reconnected in " + latencyMs + " ms");
+                }
+            }
+        };
+        sdkSupervisor.addListener(recoveryListener);
+    }
 
-                            @Override
-                            public void finish(Result result, int pagesPrinted) {
-                                toastInMainThread(appContext, "finish, Result " + result + "; Result type " + result.getType() + "; Result message " + result.getType().getMessage() + "; pages printed " + pagesPrinted);
-                            }
-                        });
-                    } catch (RemoteException e) {
-                        e.printStackTrace();
-                    }
+    private void setPrintCallback(final Context appContext) {
+        try {
+            intentApi.setPrintCallback(new IPrintCallback.Stub() {
+                @Override
+                public void startingPrintJob() {
+                    toastInMainThread(appContext, "startingPrintJob");
+                }
+
+                @Override
+                public void start() {
+                    toastInMainThread(appContext, "start");
                 }
 
                 @Override
-                public void onFileOpen(int progress, int finished) {
-                    toastInMainThread(appContext, "onFileOpen progress " + progress + "; finished " + (finished == 1));
+                public void sendingPage(int pageNum, int progress) {
+                    toastInMainThread(appContext, "sendingPage number " + pageNum + ", progress " + progress);
                 }
 
                 @Override
-                public void onLibraryDownload(int progress) {
-                    toastInMainThread(appContext, "onLibraryDownload progress " + progress);
+                public void preparePage(int pageNum) {
+                    toastInMainThread(appContext, "preparePage number " + pageNum);
                 }
 
                 @Override
-                public boolean onRenderLibraryCheck(boolean renderLibrary, boolean fontLibrary) {
-                    toastInMainThread(appContext, "onRenderLibraryCheck render library " + renderLibrary + "; fonts library " + fontLibrary);
-                    return true;
+                public boolean needCancel() {
+                    toastInMainThread(appContext, "needCancel");
+                    // If you need to cancel printing send true
+                    return false;
                 }
 
                 @Override
-                public String onPasswordRequired() {
-                    toastInMainThread(appContext, "onPasswordRequired");
-                    return "password";
+                public void finishingPrintJob() {
+                    toastInMainThread(appContext, "finishingPrintJob");
                 }
 
                 @Override
-                public void onError(Result result) {
-                    toastInMainThread(appContext, "error, Result " + result + "; Result type " + result.getType());
+                public void finish(Result result, int pagesPrinted) {
+                    toastInMainThread(appContext, "finish, Result " + result + "; Result type " + result.getType() + "; Result message " + result.getType().getMessage() + "; pages printed " + pagesPrinted);
                 }
             });
         } catch (RemoteException e) {
@@ -138,20 +182,15 @@ public class IntentApiFragment extends Fragment implements View.OnClickListener
     @Override
     public void onDetach() {
         super.onDetach();
-        if (intentApi != null) {
-            intentApi.stopService(null);
-            try {
-                intentApi.setServiceCallback(null);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-            try {
-                intentApi.setPrintCallback(null);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-            intentApi = null;
+        sdkConnection.removeListener(connectionListener);
+        sdkSupervisor.removeListener(recoveryListener);
+        sdkConnection.setIntentApiCallback(null);
+        try {
+            intentApi.setPrintCallback(null);
+        } catch (RemoteException e) {
+            e.printStackTrace();
         }
+        uiIntentApi = null;
     }
 
     @Override
@@ -161,6 +200,7 @@ public class IntentApiFragment extends Fragment implements View.OnClickListener
         root.findViewById(R.id.activate_online).setOnClickListener(this);
         root.findViewById(R.id.setup_printer).setOnClickListener(this);
         root.findViewById(R.id.change_options).setOnClickListener(this);
+        root.findViewById(R.id.option_profiles).setOnClickListener(this);
         root.findViewById(R.id.get_current_printer).setOnClickListener(this);
         root.findViewById(R.id.print_image).setOnClickListener(this);
         root.findViewById(R.id.print_file).setOnClickListener(this);
@@ -176,7 +216,18 @@ public class IntentApiFragment extends Fragment implements View.OnClickListener
     }
 
     @Override
-    public void onClick(View v) {
+    public void onClick(final View v) {
+        // clicks made before the service is bound run as soon as it is
+        sdkConnection.whenReady(SdkConnection.Service.INTENT_API, new Runnable() {
+            @Override
+            public void run() {
+                if (isAdded())
+                    onServiceClick(v);
+            }
+        });
+    }
+
+    private void onServiceClick(View v) {
         switch (v.getId()) {
             case R.id.check_premium:
                 new AlertDialog.Builder(requireContext())
@@ -205,10 +256,28 @@ public class IntentApiFragment extends Fragment implements View.OnClickListener
                 });
                 break;
             case R.id.setup_printer:
-                intentApi.setupCurrentPrinter();
+                uiIntentApi.setupCurrentPrinter();
+                printOptionProfiles.invalidate();
                 break;
             case R.id.change_options:
-                intentApi.changePrinterOptions();
+                uiIntentApi.changePrinterOptions();
+                printOptionProfiles.invalidate();
+                break;
+            case R.id.option_profiles:
+                try {
+                    OptionProfilesDialog.show(requireContext(), printOptionProfiles, printOptionProfiles.getIntentApiModel(intentApi),
+                            new String[]{PrintOptionProfiles.SCOPE_IMAGES, PrintOptionProfiles.SCOPE_FILES},
+                            new OptionProfilesDialog.OptionsReader() {
+                                @Override
+                                public Map<String, String> read(String scope) throws RemoteException {
+                                    PrintHandOptionsSession.Kind kind = PrintOptionProfiles.SCOPE_IMAGES.equals(scope)
+                                            ? PrintHandOptionsSession.Kind.IMAGES : PrintHandOptionsSession.Kind.FILES;
+                                    return PrintHandOptionsSession.load(intentApi, kind).getProfile();
+                                }
+                            });
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                }
                 break;
             case R.id.get_current_printer:
                 try {
@@ -219,13 +288,13 @@ public class IntentApiFragment extends Fragment implements View.OnClickListener
                 }
                 break;
             case R.id.print_image:
-                intentApi.print(FilesUtils.getFileUriWithPermission(requireContext(), FilesUtils.FILE_PNG), "image/png", "from printing sample");
+                uiIntentApi.print(FilesUtils.getFileUriWithPermission(requireContext(), FilesUtils.FILE_PNG), "image/png", "from printing sample");
                 break;
             case R.id.print_file:
-                intentApi.print(FilesUtils.getFileUriWithPermission(requireContext(), FilesUtils.FILE_DOC), "application/msword", "from printing sample");
+                uiIntentApi.print(FilesUtils.getFileUriWithPermission(requireContext(), FilesUtils.FILE_DOC), "application/msword", "from printing sample");
                 break;
             case R.id.show_file_preview:
-                intentApi.showFilePreview(FilesUtils.getFileUriWithPermission(requireContext(), FilesUtils.FILE_DOC), "application/msword", 0);
+                uiIntentApi.showFilePreview(FilesUtils.getFileUriWithPermission(requireContext(), FilesUtils.FILE_DOC), "application/msword", 0);
                 break;
             case R.id.print_with_your_rendering:
                 try {
@@ -444,40 +513,57 @@ public class IntentApiFragment extends Fragment implements View.OnClickListener
                 }
                 break;
             case R.id.print_image_with_print_hand_rendering_without_ui:
-                try {
-                    intentApi.print("PrintingSample", "image/png", FilesUtils.getFileUriWithPermission(requireContext(), FilesUtils.FILE_PNG));
-                } catch (RemoteException e) {
-                    e.printStackTrace();
-                }
+                final Uri imageUri = FilesUtils.getFileUriWithPermission(requireContext(), FilesUtils.FILE_PNG);
+                sdkSupervisor.submit(SdkConnection.Service.INTENT_API, new SdkSupervisor.Job() {
+                    @Override
+                    void run() throws RemoteException {
+                        printOptionProfiles.submit(intentApi, PrintHandOptionsSession.Kind.IMAGES, new PrintOptionProfiles.Submission() {
+                            @Override
+                            public void submit() throws RemoteException {
+                                intentApi.print("PrintingSample", "image/png", imageUri);
+                            }
+                        });
+                    }
+                });
                 break;
             case R.id.change_image_options:
                 try {
-                    List<PrintHandOption> imageOptions = intentApi.getImagesOptions();
-                    changeRandomOption(imageOptions);
-                    intentApi.setImagesOptions(imageOptions);
+                    changeRandomOption(PrintHandOptionsSession.load(intentApi, PrintHandOptionsSession.Kind.IMAGES));
                 } catch (RemoteException e) {
                     e.printStackTrace();
                 }
                 break;
             case R.id.print_file_with_print_hand_rendering_without_ui:
-                try {
-                    intentApi.print("PrintingSample", "application/ms-word", FilesUtils.getFileUriWithPermission(requireContext(), FilesUtils.FILE_DOC));
-                } catch (RemoteException e) {
-                    e.printStackTrace();
-                }
+                final Uri docUri = FilesUtils.getFileUriWithPermission(requireContext(), FilesUtils.FILE_DOC);
+                sdkSupervisor.submit(SdkConnection.Service.INTENT_API, new SdkSupervisor.Job() {
+                    @Override
+                    void run() throws RemoteException {
+                        printOptionProfiles.submit(intentApi, PrintHandOptionsSession.Kind.FILES, new PrintOptionProfiles.Submission() {
+                            @Override
+                            public void submit() throws RemoteException {
+                                intentApi.print("PrintingSample", "application/ms-word", docUri);
+                            }
+                        });
+                    }
+                });
                 break;
             case R.id.print_protected_file_with_print_hand_rendering_without_ui:
-                try {
-                    intentApi.print("PrintingSample", "application/pdf", FilesUtils.getFileUriWithPermission(requireContext(), FilesUtils.FILE_PDF));
-                } catch (RemoteException e) {
-                    e.printStackTrace();
-                }
+                final Uri pdfUri = FilesUtils.getFileUriWithPermission(requireContext(), FilesUtils.FILE_PDF);
+                sdkSupervisor.submit(SdkConnection.Service.INTENT_API, new SdkSupervisor.Job() {
+                    @Override
+                    void run() throws RemoteException {
+                        printOptionProfiles.submit(intentApi, PrintHandOptionsSession.Kind.FILES, new PrintOptionProfiles.Submission() {
+                            @Override
+                            public void submit() throws RemoteException {
+                                intentApi.print("PrintingSample", "application/pdf", pdfUri);
+                            }
+                        });
+                    }
+                });
                 break;
             case R.id.change_files_options:
                 try {
-                    List<PrintHandOption> fileOptions = intentApi.getFilesOptions();
-                    changeRandomOption(fileOptions);
-                    intentApi.setFilesOptions(fileOptions);
+                    changeRandomOption(PrintHandOptionsSession.load(intentApi, PrintHandOptionsSession.Kind.FILES));
                 } catch (RemoteException e) {
                     e.printStackTrace();
                 }
@@ -494,14 +580,17 @@ public class IntentApiFragment extends Fragment implements View.OnClickListener
         });
     }
 
-    private void changeRandomOption(List<PrintHandOption> options) {
+    private void changeRandomOption(PrintHandOptionsSession session) throws RemoteException {
+        List<PrintHandOption> options = session.getOptions();
         if (options.size() > 0) {
             Random random = new Random();
             PrintHandOption option = options.get(random.nextInt(options.size()));
             String currentValue = option.getValue();
             List<String> valuesList = option.getValuesList();
-            option.setValue(valuesList.get(random.nextInt(valuesList.size())));
-            String newValue = option.getValue();
+            String newValue = valuesList.get(random.nextInt(valuesList.size()));
+            // Written back in one batched call, and not at all if the value is unchanged
+            session.apply(Collections.singletonMap(option.getName(), newValue));
+            printOptionProfiles.invalidate();
             Toast.makeText(requireContext().getApplicationContext(), "option " + option.getName() + " changed from " + currentValue + " to " + newValue, Toast.LENGTH_LONG).show();
         }
     }
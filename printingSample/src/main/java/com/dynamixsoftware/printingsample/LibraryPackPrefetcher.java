@@ -0,0 +1,335 @@
+package com.dynamixsoftware.printingsample;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.os.BatteryManager;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.dynamixsoftware.printingsdk.DriversSearchEntry;
+import com.dynamixsoftware.printingsdk.ISetupPrinterListener;
+import com.dynamixsoftware.printingsdk.Printer;
+import com.dynamixsoftware.printingsdk.PrintingSdk;
+import com.dynamixsoftware.printingsdk.Result;
+import com.dynamixsoftware.printingsdk.ResultType;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * LibraryPackPrefetcher - Installs driver library packs ahead of the first print to a model.
+ *
+ * Without prefetch, the first setup of a new model blocks on a library pack download reported
+ * through {@code ISetupPrinterListener.libraryPackInstallationProcess}. This manager predicts the
+ * packs that will be needed from the recent printers, models known to the
+ * {@link DriverResolutionCache} first, and installs them while the device is charging, the screen
+ * is off and no print job or setup started by the user is running. Only recent printers are
+ * prefetched, so prefetch never adds a printer to the recent printers list.
+ *
+ * The SDK installs packs only as a side effect of {@code setup(..., forceInstall = true, ...)},
+ * which also changes the current printer. Right after each setup, in the same task and whether
+ * or not the window is still open, prefetch restores the printer that was current before, unless
+ * the user picked another printer in the meantime. The pending restore is persisted before each
+ * setup, so a restore cut short by the process dying is done by the next prefetcher, as soon as
+ * it starts. A setup that does not finish in time stops prefetch until the next window, with its
+ * restore still pending, rather than running another setup next to it.
+ */
+class LibraryPackPrefetcher {
+
+    private static final String TAG = "LibraryPackPrefetcher";
+
+    private static final String PREFS_NAME = "library_pack_prefetch";
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_PREFETCHED = "prefetched";
+    // names of the printer to restore and of the printer prefetch made current
+    private static final String KEY_RESTORE_NAME = "restoreName";
+    private static final String KEY_EXPECTED_NAME = "expectedName";
+
+    private static final long SETUP_TIMEOUT_MINUTES = 10;
+
+    private final Context context;
+    private final PrintingSdk printingSdk;
+    private final DriverResolutionCache driverResolutionCache;
+    private final SharedPreferences preferences;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger activeJobs = new AtomicInteger();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean interactive = true;
+    private volatile boolean started;
+
+    private final BroadcastReceiver windowReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            if (Intent.ACTION_SCREEN_ON.equals(action))
+                interactive = true;
+            else if (Intent.ACTION_SCREEN_OFF.equals(action))
+                interactive = false;
+            maybeRun();
+        }
+    };
+
+    LibraryPackPrefetcher(Context context, PrintingSdk printingSdk, DriverResolutionCache driverResolutionCache) {
+        this.context = context.getApplicationContext();
+        this.printingSdk = printingSdk;
+        this.driverResolutionCache = driverResolutionCache;
+        this.preferences = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String version = driverResolutionCache.getVersion();
+        if (!version.equals(preferences.getString(KEY_VERSION, null)))
+            preferences.edit().clear().putString(KEY_VERSION, version).apply();
+    }
+
+    void start() {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        context.registerReceiver(windowReceiver, filter);
+        started = true;
+        // a previous prefetcher may have died between a setup and its restore
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    restorePendingPrinter();
+                } catch (RemoteException e) {
+                    Log.w(TAG, "Could not restore current printer, retrying at the next window", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops prefetching more printers. A setup already running is waited for and followed by
+     * its restore, so the user never keeps a printer picked by prefetch.
+     */
+    void stop() {
+        if (started) {
+            context.unregisterReceiver(windowReceiver);
+            started = false;
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Marks the start of a print job or of a setup requested by the user. Prefetch never starts
+     * while one is running, and stops between two printers when one begins.
+     */
+    void onJobStarted() {
+        activeJobs.incrementAndGet();
+    }
+
+    void onJobFinished() {
+        if (activeJobs.decrementAndGet() <= 0) {
+            activeJobs.set(0);
+            maybeRun();
+        }
+    }
+
+    /**
+     * Reports a setup that failed with {@link ResultType#ERROR_LIBRARY_PACK_NOT_INSTALLED}; the
+     * model is prefetched again at the next idle window.
+     */
+    void onLibraryPackMissing(Printer printer) {
+        Set<String> prefetched = new HashSet<>(preferences.getStringSet(KEY_PREFETCHED, new HashSet<String>()));
+        if (printer != null && prefetched.remove(DriverResolutionCache.modelKey(printer)))
+            preferences.edit().putStringSet(KEY_PREFETCHED, prefetched).apply();
+        maybeRun();
+    }
+
+    private boolean isWindowOpen() {
+        return started && !interactive && activeJobs.get() == 0 && isCharging();
+    }
+
+    private boolean isCharging() {
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    private void maybeRun() {
+        if (!isWindowOpen() || !running.compareAndSet(false, true))
+            return;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    prefetch();
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                } finally {
+                    running.set(false);
+                }
+            }
+        });
+    }
+
+    private void prefetch() throws RemoteException {
+        if (!restorePendingPrinter())
+            return;
+        Set<String> prefetched = new HashSet<>(preferences.getStringSet(KEY_PREFETCHED, new HashSet<String>()));
+        Map<String, Printer> candidates = predictPrinters(prefetched);
+        if (candidates.isEmpty())
+            return;
+        Printer currentPrinter = printingSdk.getCurrentPrinter();
+        for (Map.Entry<String, Printer> candidate : candidates.entrySet()) {
+            if (!isWindowOpen())
+                break;
+            Log.i(TAG, "Prefetching library packs for " + candidate.getKey());
+            Printer printer = candidate.getValue();
+            List<DriversSearchEntry> entries = driverResolutionCache.getSearchEntries(printer);
+            SetupResult result = new SetupResult();
+            if (currentPrinter != null)
+                savePendingRestore(currentPrinter, printer);
+            if (entries != null && !entries.get(0).getDriverHandlesList().isEmpty()) {
+                DriversSearchEntry entry = entries.get(0);
+                printingSdk.setup(printer, entry.getDriverHandlesList().get(0), entry.getTransportType(), true, result);
+            } else
+                printingSdk.setup(printer, true, result);
+            Result finish = result.await();
+            if (result.installed.get())
+                driverResolutionCache.onLibraryPacksChanged();
+            if (finish == null) {
+                // still running, possibly still downloading: never start a second setup next to it
+                Log.w(TAG, "Setup of " + printer.getName() + " timed out, stopping prefetch");
+                return;
+            }
+            // other errors are retried at the next idle window
+            if (finish == Result.OK || result.installed.get()) {
+                prefetched.add(candidate.getKey());
+                preferences.edit().putStringSet(KEY_PREFETCHED, prefetched).apply();
+            }
+            if (currentPrinter != null && !restoreCurrentPrinter(currentPrinter, printer.getName()))
+                return;
+        }
+    }
+
+    private void savePendingRestore(Printer original, Printer expected) {
+        preferences.edit()
+                .putString(KEY_RESTORE_NAME, original.getName())
+                .putString(KEY_EXPECTED_NAME, expected.getName())
+                .commit();
+    }
+
+    private void clearPendingRestore() {
+        preferences.edit()
+                .remove(KEY_RESTORE_NAME)
+                .remove(KEY_EXPECTED_NAME)
+                .apply();
+    }
+
+    /**
+     * Restores the printer persisted by an earlier prefetch that did not get to restore it.
+     *
+     * @return {@code false} if the restore is still pending
+     */
+    private boolean restorePendingPrinter() throws RemoteException {
+        String name = preferences.getString(KEY_RESTORE_NAME, null);
+        if (name == null)
+            return true;
+        // the persisted printer is found again among the recent printers
+        Printer original = null;
+        for (Printer printer : printingSdk.getRecentPrintersList())
+            if (name.equals(printer.getName()))
+                original = printer;
+        if (original == null) {
+            Log.i(TAG, "Printer " + name + " is not a recent printer any more, not restoring it");
+            clearPendingRestore();
+            return true;
+        }
+        return restoreCurrentPrinter(original, preferences.getString(KEY_EXPECTED_NAME, null));
+    }
+
+    /**
+     * Makes {@code original} current again, unless the current printer is not the one prefetch
+     * set any more.
+     *
+     * @return {@code false} if the restore did not finish in time and is still pending
+     */
+    private boolean restoreCurrentPrinter(Printer original, String expectedName) throws RemoteException {
+        if (!isSamePrinter(printingSdk.getCurrentPrinter(), expectedName)) {
+            Log.i(TAG, "Current printer changed since prefetch, not restoring " + original.getName());
+            clearPendingRestore();
+            return true;
+        }
+        SetupResult restore = new SetupResult();
+        printingSdk.setup(original, false, restore);
+        Result finish = restore.await();
+        if (finish == null) {
+            Log.w(TAG, "Restoring current printer " + original.getName() + " timed out");
+            return false;
+        }
+        if (finish != Result.OK)
+            Log.w(TAG, "Could not restore current printer " + original.getName());
+        clearPendingRestore();
+        return true;
+    }
+
+    // Printers cross the binder as fresh instances, so they are compared by name
+    private static boolean isSamePrinter(Printer printer, String name) {
+        return printer != null && name != null && name.equals(printer.getName());
+    }
+
+    // Recent printers of models whose drivers were resolved before first, then the other recent
+    // printers: they are the most likely to be printed to next
+    private Map<String, Printer> predictPrinters(Set<String> prefetched) throws RemoteException {
+        List<Printer> recent = printingSdk.getRecentPrintersList();
+        Set<String> knownModels = driverResolutionCache.getKnownModels();
+        Map<String, Printer> candidates = new LinkedHashMap<>();
+        for (Printer printer : recent)
+            if (knownModels.contains(DriverResolutionCache.modelKey(printer)))
+                addCandidate(candidates, prefetched, printer);
+        for (Printer printer : recent)
+            addCandidate(candidates, prefetched, printer);
+        return candidates;
+    }
+
+    private static void addCandidate(Map<String, Printer> candidates, Set<String> prefetched, Printer printer) {
+        String model = DriverResolutionCache.modelKey(printer);
+        if (!prefetched.contains(model) && !candidates.containsKey(model))
+            candidates.put(model, printer);
+    }
+
+    private static final class SetupResult extends ISetupPrinterListener.Stub {
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final AtomicReference<Result> result = new AtomicReference<>();
+        final AtomicBoolean installed = new AtomicBoolean();
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void libraryPackInstallationProcess(int arg0) {
+            installed.set(true);
+        }
+
+        @Override
+        public void finish(Result arg0) {
+            result.set(arg0);
+            finished.countDown();
+        }
+
+        Result await() {
+            try {
+                finished.await(SETUP_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return result.get();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.dynamixsoftware.printingsample;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LookalikeDomainIndex - Finds every protected domain within a small edit distance of a host in
+ * one lookup, without comparing the host against each domain.
+ *
+ * The part of each domain before its top-level domain is cut into {@code maxDistance + 1} pieces.
+ * {@code k <= maxDistance} edits touch at most {@code k} pieces, so a domain within {@code k}
+ * edits of the query has a piece that occurs unchanged in the query, shifted by at most {@code k}
+ * characters. The top-level domain is left out because nearly every domain would share that
+ * piece. Pieces are indexed by the length of the cut part, piece number and a 64-bit hash of the
+ * text, so a lookup probes the few places such a piece could sit in the query and checks only
+ * the domains found there with the banded {@link #distance(String, String, int)} kernel. The
+ * index is a set of flat arrays, and lookups hash the query in place.
+ *
+ * A BK-tree was tried first, but edit distances between unrelated domains cluster around their
+ * length, so its triangle-inequality pruning skipped few nodes and lookups grew with the list.
+ *
+ * Not thread-safe while domains are added; safe to share once built.
+ */
+class LookalikeDomainIndex {
+
+    private final int maxDistance;
+    private final int pieceCount;
+
+    private String[] domains = new String[16];
+    private int size;
+    // domains whose part before the top-level domain is shorter than pieceCount, which cannot be
+    // cut; checked one by one
+    private final List<String> shortDomains = new ArrayList<>();
+
+    // open-addressing table from piece key to the first entry of its chain, 0 when empty
+    private long[] keys = new long[64];
+    private int[] heads = new int[64];
+    private int keyCount;
+    // entry e (1-based) holds the domain number entryDomains[e - 1], chained through entryNext
+    private int[] entryDomains = new int[64];
+    private int[] entryNext = new int[64];
+    private int entryCount;
+
+    /**
+     * @param maxDistance Most edits a lookup may ask for
+     */
+    LookalikeDomainIndex(int maxDistance) {
+        this.maxDistance = maxDistance;
+        this.pieceCount = maxDistance + 1;
+    }
+
+    /**
+     * Adds {@code domain}; each domain must be added once.
+     */
+    void add(String domain) {
+        int length = getCutLength(domain);
+        if (length < pieceCount) {
+            shortDomains.add(domain);
+            return;
+        }
+        if (size == domains.length) {
+            String[] newDomains = new String[size * 2];
+            System.arraycopy(domains, 0, newDomains, 0, size);
+            domains = newDomains;
+        }
+        int id = size++;
+        domains[id] = domain;
+        for (int piece = 0; piece < pieceCount; piece++)
+            addEntry(key(length, piece, domain, pieceStart(length, piece), pieceStart(length, piece + 1)), id);
+    }
+
+    int size() {
+        return size + shortDomains.size();
+    }
+
+    /**
+     * @return the domain closest to {@code query} within {@code maxDistance} edits, the first
+     *         found on a tie, or {@code null} if there is none
+     */
+    String findNearest(String query, int maxDistance) {
+        Search search = new Search(query, maxDistance, null);
+        search.run();
+        return search.nearest;
+    }
+
+    /**
+     * Adds to {@code out} every domain within {@code maxDistance} edits of {@code query}.
+     */
+    void findAll(String query, int maxDistance, List<String> out) {
+        new Search(query, maxDistance, out).run();
+    }
+
+    private final class Search {
+        final String query;
+        final int k;
+        final List<String> out;
+        // kernel rows, allocated once per lookup
+        final int[] previous;
+        final int[] current;
+        // domains already checked; candidates are few, so a list scan is enough
+        int[] checked = new int[8];
+        int checkedCount;
+        String nearest;
+        int nearestDistance = Integer.MAX_VALUE;
+
+        Search(String query, int k, List<String> out) {
+            if (k > maxDistance)
+                throw new IllegalArgumentException("Index built for at most " + maxDistance + " edits, not " + k);
+            this.query = query;
+            this.k = k;
+            this.out = out;
+            previous = new int[query.length() + 1];
+            current = new int[query.length() + 1];
+        }
+
+        void run() {
+            for (String domain : shortDomains)
+                check(domain);
+            int queryLength = query.length();
+            // the cut part of a domain within k edits is at most k longer than the query
+            for (int length = pieceCount; length <= queryLength + k; length++)
+                for (int piece = 0; piece < pieceCount; piece++) {
+                    int start = pieceStart(length, piece);
+                    int pieceLength = pieceStart(length, piece + 1) - start;
+                    for (int at = Math.max(0, start - k); at <= start + k && at + pieceLength <= queryLength; at++)
+                        for (int entry = getHead(key(length, piece, query, at, at + pieceLength)); entry != 0; entry = entryNext[entry - 1])
+                            checkOnce(entryDomains[entry - 1]);
+                }
+        }
+
+        private void checkOnce(int id) {
+            for (int i = 0; i < checkedCount; i++)
+                if (checked[i] == id)
+                    return;
+            if (checkedCount == checked.length) {
+                int[] newChecked = new int[checkedCount * 2];
+                System.arraycopy(checked, 0, newChecked, 0, checkedCount);
+                checked = newChecked;
+            }
+            checked[checkedCount++] = id;
+            check(domains[id]);
+        }
+
+        private void check(String domain) {
+            int distance = distance(domain, query, k, previous, current);
+            if (distance > k)
+                return;
+            if (out != null)
+                out.add(domain);
+            if (distance < nearestDistance) {
+                nearest = domain;
+                nearestDistance = distance;
+            }
+        }
+    }
+
+    // Length of the part before the top-level domain, or the whole length if there is none
+    private static int getCutLength(String domain) {
+        int dot = domain.lastIndexOf('.');
+        return dot > 0 ? dot : domain.length();
+    }
+
+    private int pieceStart(int length, int piece) {
+        return piece * length / pieceCount;
+    }
+
+    // FNV-1a over the piece text, seeded with the cut length and piece number
+    private static long key(int length, int piece, String text, int start, int end) {
+        long hash = 0xcbf29ce484222325L ^ ((long) length << 8 | piece);
+        for (int i = start; i < end; i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private int getHead(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); heads[i] != 0; i = (i + 1) & mask)
+            if (keys[i] == key)
+                return heads[i];
+        return 0;
+    }
+
+    private void addEntry(long key, int id) {
+        if (entryCount == entryDomains.length) {
+            int[] newDomains = new int[entryCount * 2];
+            int[] newNext = new int[entryCount * 2];
+            System.arraycopy(entryDomains, 0, newDomains, 0, entryCount);
+            System.arraycopy(entryNext, 0, newNext, 0, entryCount);
+            entryDomains = newDomains;
+            entryNext = newNext;
+        }
+        // keep the table at most half full so probes stay short and always end
+        if ((keyCount + 1) * 2 > keys.length)
+            resize(keys.length * 2);
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (heads[i] != 0 && keys[i] != key)
+            i = (i + 1) & mask;
+        if (heads[i] == 0)
+            keyCount++;
+        entryDomains[entryCount] = id;
+        entryNext[entryCount] = heads[i];
+        entryCount++;
+        keys[i] = key;
+        heads[i] = entryCount;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldHeads = heads;
+        keys = new long[capacity];
+        heads = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++)
+            if (oldHeads[j] != 0) {
+                int i = slot(oldKeys[j], mask);
+                while (heads[i] != 0)
+                    i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                heads[i] = oldHeads[j];
+            }
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    /**
+     * @return the Levenshtein distance between {@code a} and {@code b}, or
+     *         {@code maxDistance + 1} if it exceeds {@code maxDistance}
+     */
+    static int distance(String a, String b, int maxDistance) {
+        return distance(a, b, maxDistance, new int[b.length() + 1], new int[b.length() + 1]);
+    }
+
+    // Banded dynamic programming over two rows of b.length() + 1 cells: only cells within
+    // maxDistance of the diagonal can stay within maxDistance, the rest count as out of reach
+    private static int distance(String a, String b, int maxDistance, int[] previous, int[] current) {
+        int n = a.length();
+        int m = b.length();
+        if (Math.abs(n - m) > maxDistance)
+            return maxDistance + 1;
+        int outOfReach = maxDistance + 1;
+        for (int j = 0; j <= m; j++)
+            previous[j] = Math.min(j, outOfReach);
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(1, i - maxDistance);
+            int to = Math.min(m, i + maxDistance);
+            current[from - 1] = from == 1 ? Math.min(i, outOfReach) : outOfReach;
+            int rowMin = current[from - 1];
+            char c = a.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cell = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                cell = Math.min(cell, previous[j] + 1);
+                cell = Math.min(cell, current[j - 1] + 1);
+                cell = Math.min(cell, outOfReach);
+                current[j] = cell;
+                rowMin = Math.min(rowMin, cell);
+            }
+            // the next row reads one cell past this band
+            if (to < m)
+                current[to + 1] = outOfReach;
+            if (rowMin >= outOfReach)
+                return outOfReach;
+            int[] row = previous;
+            previous = current;
+            current = row;
+        }
+        return previous[m];
+    }
+}
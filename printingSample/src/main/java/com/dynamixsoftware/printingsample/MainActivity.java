@@ -1,7 +1,6 @@
 package com.dynamixsoftware.printingsample;
 
 import android.os.Bundle;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -12,18 +11,11 @@ import androidx.viewpager.widget.ViewPager;
 
 public class MainActivity extends AppCompatActivity {
 
-    private static final String TAG = "MainActivity";
-
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        FilesUtils.extractFilesFromAssets(this);
-        
-        // Initialize Anti-Spoofing Security Validation
-        initializeAntiSpoofingValidation();
-
         this.<ViewPager>findViewById(R.id.pager).setAdapter(new FragmentPagerAdapter(getSupportFragmentManager()) {
             @Override
             public int getCount() {
@@ -58,53 +50,4 @@ public class MainActivity extends AppCompatActivity {
                 }
             }
         });
-    }
-    
-    /**
-     * Initialize and demonstrate Anti-Spoofing validation
-     * This validates against DNS Spoofing, WDM Spoofing, Domain Spoofing, and System Hijacking
-     */
-    private void initializeAntiSpoofingValidation() {
-        Log.i(TAG, "=== Initializing Anti-Spoofing Security Layer ===");
-        
-        // Run comprehensive security validation
-        AntiSpoofingValidator.ValidationResult result = 
-            AntiSpoofingValidator.validateAll(this, "https://montinode.com");
-        
-        Log.i(TAG, "Security validation result: " + result);
-        
-        if (!result.isValid()) {
-            Log.w(TAG, "Security concerns detected: " + result.getMessage());
-        } else {
-            Log.i(TAG, "All anti-spoofing checks passed successfully");
-        }
-        
-        // Optional: Run demo validations
-        // Uncomment to see detailed validation examples in logs
-        // runAntiSpoofingDemo();
-    }
-    
-    /**
-     * Run comprehensive anti-spoofing demonstrations
-     * Uncomment the call to this method in initializeAntiSpoofingValidation() to see demos
-     */
-    private void runAntiSpoofingDemo() {
-        Log.i(TAG, "=== Running Anti-Spoofing Demonstrations ===");
-        
-        // DNS Spoofing Demo
-        AntiSpoofingDemo.demonstrateDNSValidation();
-        
-        // WDM Spoofing Demo
-        AntiSpoofingDemo.demonstrateWDMValidation();
-        
-        // Domain Spoofing Demo
-        AntiSpoofingDemo.demonstrateDomainValidation();
-        
-        // System Hijacking Demo
-        AntiSpoofingDemo.demonstrateSystemHijackingValidation(this);
-        
-        // Comprehensive Demo
-        AntiSpoofingDemo.demonstrateComprehensiveValidation(this, "https://montinode.com");
-    }
-
-}
+    }}
@@ -0,0 +1,123 @@
+package com.dynamixsoftware.printingsample;
+
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.RemoteException;
+import android.util.Log;
+import android.widget.EditText;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AlertDialog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * OptionProfilesDialog - Lets the operator pick, save and delete the {@link PrintOptionProfiles}
+ * of one printer model.
+ *
+ * The list offers every profile saved for the model in any of the screen's scopes, "No profile"
+ * to keep the options as they are, and an entry saving the current options of every scope under
+ * a new name.
+ */
+class OptionProfilesDialog {
+
+    private static final String TAG = "OptionProfilesDialog";
+
+    /** Reads the current options of one scope, in the form {@link PrintOptionProfiles} stores. */
+    interface OptionsReader {
+        Map<String, String> read(String scope) throws RemoteException;
+    }
+
+    private OptionProfilesDialog() {
+        // Utility class — do not instantiate.
+    }
+
+    static void show(final Context context, final PrintOptionProfiles profiles, final String model,
+                     final String[] scopes, final OptionsReader reader) {
+        Set<String> sorted = new TreeSet<>();
+        for (String scope : scopes)
+            sorted.addAll(profiles.getNames(model, scope));
+        final List<String> names = new ArrayList<>(sorted);
+        String selected = profiles.getSelected();
+        CharSequence[] items = new CharSequence[names.size() + 2];
+        items[0] = label(context, context.getString(R.string.no_profile), selected == null);
+        for (int i = 0; i < names.size(); i++)
+            items[i + 1] = label(context, names.get(i), names.get(i).equals(selected));
+        items[items.length - 1] = context.getString(R.string.save_profile);
+        new AlertDialog.Builder(context)
+                .setTitle(R.string.option_profiles)
+                .setItems(items, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        if (which == 0)
+                            profiles.select(null);
+                        else if (which <= names.size())
+                            showProfile(context, profiles, model, scopes, names.get(which - 1));
+                        else
+                            showSave(context, profiles, model, scopes, reader);
+                    }
+                })
+                .show();
+    }
+
+    private static CharSequence label(Context context, String name, boolean selected) {
+        return selected ? context.getString(R.string.profile_selected, name) : name;
+    }
+
+    private static void showProfile(Context context, final PrintOptionProfiles profiles, final String model,
+                                    final String[] scopes, final String name) {
+        new AlertDialog.Builder(context)
+                .setTitle(name)
+                .setPositiveButton(R.string.use_profile, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        profiles.select(name);
+                    }
+                })
+                .setNegativeButton(R.string.delete_profile, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        for (String scope : scopes)
+                            profiles.delete(model, scope, name);
+                        if (name.equals(profiles.getSelected()))
+                            profiles.select(null);
+                    }
+                })
+                .setNeutralButton(R.string.cancel, null)
+                .show();
+    }
+
+    private static void showSave(final Context context, final PrintOptionProfiles profiles, final String model,
+                                 final String[] scopes, final OptionsReader reader) {
+        final EditText nameInput = new EditText(context);
+        nameInput.setSingleLine();
+        nameInput.setHint(R.string.profile_name);
+        new AlertDialog.Builder(context)
+                .setTitle(R.string.save_profile)
+                .setView(nameInput)
+                .setPositiveButton(R.string.ok, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        String name = nameInput.getText().toString().trim();
+                        if (name.isEmpty()) {
+                            Toast.makeText(context.getApplicationContext(), R.string.message_error_profile_name, Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+                        try {
+                            for (String scope : scopes)
+                                profiles.save(model, scope, name, reader.read(scope));
+                            profiles.select(name);
+                        } catch (RemoteException e) {
+                            Log.w(TAG, "Could not read the current options", e);
+                            Toast.makeText(context.getApplicationContext(), R.string.message_error_profile_save, Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+}
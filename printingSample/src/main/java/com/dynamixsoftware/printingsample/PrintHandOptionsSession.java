@@ -0,0 +1,121 @@
+package com.dynamixsoftware.printingsample;
+
+import android.os.RemoteException;
+
+import com.dynamixsoftware.intentapi.IntentAPI;
+import com.dynamixsoftware.intentapi.PrintHandOption;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PrintHandOptionsSession - Indexed, diff-based editing of Intent API image or file options.
+ *
+ * The options are read once, indexed by name, and a desired profile (option name to value) is
+ * diffed against them. All changed values are written back with a single
+ * {@code setImagesOptions}/{@code setFilesOptions} call, and no call at all when nothing changed,
+ * so applying a 20-option profile costs one round of IPC instead of 20.
+ */
+class PrintHandOptionsSession {
+
+    enum Kind {
+        IMAGES,
+        FILES
+    }
+
+    private final IntentAPI intentApi;
+    private final Kind kind;
+    private final List<PrintHandOption> options;
+    private final Map<String, PrintHandOption> index = new LinkedHashMap<>();
+
+    private PrintHandOptionsSession(IntentAPI intentApi, Kind kind, List<PrintHandOption> options) {
+        this.intentApi = intentApi;
+        this.kind = kind;
+        this.options = options;
+        for (PrintHandOption option : options)
+            index.put(option.getName(), option);
+    }
+
+    /**
+     * Reads the options of the given kind with one remote call.
+     */
+    static PrintHandOptionsSession load(IntentAPI intentApi, Kind kind) throws RemoteException {
+        List<PrintHandOption> options = kind == Kind.IMAGES ? intentApi.getImagesOptions() : intentApi.getFilesOptions();
+        return new PrintHandOptionsSession(intentApi, kind, options != null ? options : new ArrayList<PrintHandOption>());
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    List<PrintHandOption> getOptions() {
+        return Collections.unmodifiableList(options);
+    }
+
+    PrintHandOption getOption(String name) {
+        return index.get(name);
+    }
+
+    /**
+     * @return current value of every option, suitable as a profile for {@link #apply(Map)}
+     */
+    Map<String, String> getProfile() {
+        Map<String, String> profile = new LinkedHashMap<>();
+        for (PrintHandOption option : options)
+            profile.put(option.getName(), option.getValue());
+        return profile;
+    }
+
+    /**
+     * @return the options of {@code desired} whose value differs from the current one; unknown
+     *         options and values outside the option's value list are ignored
+     */
+    Map<String, String> diff(Map<String, String> desired) {
+        Map<String, String> changes = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : desired.entrySet()) {
+            PrintHandOption option = index.get(entry.getKey());
+            String value = entry.getValue();
+            if (option == null || value == null || value.equals(option.getValue()))
+                continue;
+            if (option.getValuesList().contains(value))
+                changes.put(entry.getKey(), value);
+        }
+        return changes;
+    }
+
+    /**
+     * Applies only the changed values of {@code desired} in one batched remote call. If the call
+     * fails, the session keeps the values it had, so the next {@link #apply(Map)} sends the
+     * changes again.
+     *
+     * @return number of options changed
+     */
+    int apply(Map<String, String> desired) throws RemoteException {
+        Map<String, String> changes = diff(desired);
+        if (changes.isEmpty())
+            return 0;
+        // the whole list is sent, so the new values are set on it and rolled back on failure
+        Map<String, String> previous = new LinkedHashMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            PrintHandOption option = index.get(change.getKey());
+            previous.put(change.getKey(), option.getValue());
+            option.setValue(change.getValue());
+        }
+        boolean applied = false;
+        try {
+            if (kind == Kind.IMAGES)
+                intentApi.setImagesOptions(options);
+            else
+                intentApi.setFilesOptions(options);
+            applied = true;
+        } finally {
+            if (!applied)
+                for (Map.Entry<String, String> value : previous.entrySet())
+                    index.get(value.getKey()).setValue(value.getValue());
+        }
+        return changes.size();
+    }
+}
@@ -0,0 +1,90 @@
+package com.dynamixsoftware.printingsample;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PrintHandResolver - Knows which PrintHand apps are installed, so share intents go straight to
+ * one of them.
+ *
+ * The variants declared in the manifest {@code <queries>} are looked up in the
+ * {@link PackageManager} once, and again only after a package is added, removed or replaced.
+ * When both are installed the freemium app comes first, as before. Package changes are also
+ * passed on to the {@link UriGrantCache}, since they drop the grants made to the package.
+ */
+class PrintHandResolver {
+
+    private static final String TAG = "PrintHandResolver";
+
+    static final String PRINT_HAND_FREEMIUM = "com.dynamixsoftware.printhand";
+    static final String PRINT_HAND_PREMIUM = "com.dynamixsoftware.printhand.premium";
+
+    private static final String[] PRINT_HAND_APPS = {PRINT_HAND_FREEMIUM, PRINT_HAND_PREMIUM};
+
+    private final Context context;
+
+    // null until resolved
+    private volatile List<String> installed;
+
+    PrintHandResolver(Context context, final UriGrantCache uriGrantCache) {
+        this.context = context.getApplicationContext();
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        this.context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                installed = null;
+                Uri data = intent.getData();
+                if (data != null)
+                    uriGrantCache.onPackageChanged(data.getSchemeSpecificPart());
+            }
+        }, filter);
+    }
+
+    /**
+     * @return installed PrintHand apps, best first; empty if none is installed
+     */
+    List<String> getInstalledPackages() {
+        List<String> packages = installed;
+        if (packages == null) {
+            packages = resolve();
+            installed = packages;
+        }
+        return packages;
+    }
+
+    /**
+     * @return the PrintHand app intents should target, or the freemium app if none is installed
+     */
+    String getTargetPackage() {
+        List<String> packages = getInstalledPackages();
+        return packages.isEmpty() ? PRINT_HAND_FREEMIUM : packages.get(0);
+    }
+
+    private List<String> resolve() {
+        PackageManager packageManager = context.getPackageManager();
+        List<String> packages = new ArrayList<>();
+        for (String packageName : PRINT_HAND_APPS)
+            try {
+                packageManager.getPackageInfo(packageName, 0);
+                packages.add(packageName);
+            } catch (PackageManager.NameNotFoundException e) {
+                // not installed
+            }
+        Log.d(TAG, "Installed PrintHand apps " + packages);
+        return Collections.unmodifiableList(packages);
+    }
+}
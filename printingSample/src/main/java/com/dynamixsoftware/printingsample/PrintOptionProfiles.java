@@ -0,0 +1,197 @@
+package com.dynamixsoftware.printingsample;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.dynamixsoftware.intentapi.IPrinterInfo;
+import com.dynamixsoftware.intentapi.IntentAPI;
+import com.dynamixsoftware.printingsdk.Printer;
+import com.dynamixsoftware.printingsdk.PrintingSdk;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * PrintOptionProfiles - Named print option profiles ("draft mono", "photo", "label", ...) stored
+ * per printer model and applied as part of job submission.
+ *
+ * A profile is persisted per printer model and scope:
+ *   - images  : Intent API image options, option name to value
+ *   - files   : Intent API file options, option name to value
+ *   - printer : Printing SDK options of the current printer, option name to the position of the
+ *               value in the option's value list, see {@link PrinterOptionsSession}
+ *
+ * Operators save, pick and delete profiles through {@link OptionProfilesDialog}. One instance is
+ * shared by all screens, see {@link PrintingSampleApplication#getPrintOptionProfiles(Context)}.
+ *
+ * Selecting a profile is a local operation. The resolved options of each scope are cached in
+ * memory, so at submit time the selected profile is diffed against the cache and only changed
+ * values are written, in the same critical section as the print call. With a warm cache,
+ * switching between profiles costs no IPC at all; invalidate the cache whenever the options may
+ * have been changed elsewhere, e.g. in the PrintHand UI.
+ */
+class PrintOptionProfiles {
+
+    private static final String TAG = "PrintOptionProfiles";
+
+    static final String SCOPE_IMAGES = "images";
+    static final String SCOPE_FILES = "files";
+    static final String SCOPE_PRINTER = "printer";
+
+    private static final String PREFS_NAME = "print_option_profiles";
+    private static final String KEY_SELECTED = "selected";
+
+    /** Print call submitted once the selected profile is in effect. */
+    interface Submission {
+        void submit() throws RemoteException;
+    }
+
+    private final SharedPreferences preferences;
+
+    private String intentApiModel;
+    private final Map<PrintHandOptionsSession.Kind, PrintHandOptionsSession> intentApiSessions = new HashMap<>();
+    private final Map<String, PrinterOptionsSession> printerSessions = new HashMap<>();
+
+    PrintOptionProfiles(Context context) {
+        preferences = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    static String scopeOf(PrintHandOptionsSession.Kind kind) {
+        return kind == PrintHandOptionsSession.Kind.IMAGES ? SCOPE_IMAGES : SCOPE_FILES;
+    }
+
+    /**
+     * Selects the profile applied to the next jobs, or {@code null} to keep the current options.
+     */
+    void select(String name) {
+        preferences.edit().putString(KEY_SELECTED, name).apply();
+    }
+
+    String getSelected() {
+        return preferences.getString(KEY_SELECTED, null);
+    }
+
+    synchronized Set<String> getNames(String model, String scope) {
+        Set<String> names = new TreeSet<>();
+        JSONObject profiles = readProfiles(model, scope);
+        Iterator<String> keys = profiles.keys();
+        while (keys.hasNext())
+            names.add(keys.next());
+        return names;
+    }
+
+    synchronized Map<String, String> get(String model, String scope, String name) {
+        JSONObject profile = readProfiles(model, scope).optJSONObject(name);
+        if (profile == null)
+            return null;
+        Map<String, String> values = new LinkedHashMap<>();
+        Iterator<String> keys = profile.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            values.put(key, profile.optString(key));
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    synchronized void save(String model, String scope, String name, Map<String, String> values) {
+        JSONObject profiles = readProfiles(model, scope);
+        try {
+            profiles.put(name, new JSONObject(values));
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not save profile " + name, e);
+            return;
+        }
+        preferences.edit().putString(scope + '|' + model, profiles.toString()).apply();
+    }
+
+    synchronized void delete(String model, String scope, String name) {
+        JSONObject profiles = readProfiles(model, scope);
+        profiles.remove(name);
+        preferences.edit().putString(scope + '|' + model, profiles.toString()).apply();
+    }
+
+    /**
+     * @return the model the Intent API profiles are stored under: the name of PrintHand's current
+     *         printer, which is all the Intent API reports about it
+     */
+    synchronized String getIntentApiModel(IntentAPI intentApi) throws RemoteException {
+        if (intentApiModel == null) {
+            IPrinterInfo printer = intentApi.getCurrentPrinter();
+            intentApiModel = printer != null ? printer.getName() : "";
+        }
+        return intentApiModel;
+    }
+
+    /**
+     * Forgets the cached options, e.g. after the printer or its options were changed in PrintHand.
+     */
+    synchronized void invalidate() {
+        intentApiModel = null;
+        intentApiSessions.clear();
+        printerSessions.clear();
+    }
+
+    /**
+     * Applies the selected profile to the Intent API options of {@code kind}, then submits the job.
+     * The job is not submitted if the options cannot be applied.
+     */
+    synchronized void submit(IntentAPI intentApi, PrintHandOptionsSession.Kind kind, Submission submission) throws RemoteException {
+        String selected = getSelected();
+        if (selected != null) {
+            Map<String, String> profile = get(getIntentApiModel(intentApi), scopeOf(kind), selected);
+            if (profile != null) {
+                PrintHandOptionsSession session = intentApiSessions.get(kind);
+                if (session == null) {
+                    session = PrintHandOptionsSession.load(intentApi, kind);
+                    intentApiSessions.put(kind, session);
+                }
+                int changed = session.apply(profile);
+                Log.d(TAG, "Profile " + selected + " applied to " + scopeOf(kind) + " options, " + changed + " changed");
+            }
+        }
+        submission.submit();
+    }
+
+    /**
+     * Applies the selected profile to the options of {@code printer}, the current printer of the
+     * Printing SDK, then submits the job.
+     */
+    synchronized void submit(PrintingSdk printingSdk, Printer printer, Submission submission) throws RemoteException {
+        String selected = getSelected();
+        if (selected != null) {
+            String model = DriverResolutionCache.modelKey(printer);
+            Map<String, String> profile = get(model, SCOPE_PRINTER, selected);
+            if (profile != null) {
+                PrinterOptionsSession session = printerSessions.get(model);
+                if (session == null) {
+                    session = new PrinterOptionsSession(printingSdk, printer);
+                    printerSessions.put(model, session);
+                }
+                int changed = session.apply(profile);
+                Log.d(TAG, "Profile " + selected + " applied to " + model + ", " + changed + " changed");
+            }
+        }
+        submission.submit();
+    }
+
+    private JSONObject readProfiles(String model, String scope) {
+        String json = preferences.getString(scope + '|' + model, null);
+        if (json != null)
+            try {
+                return new JSONObject(json);
+            } catch (JSONException e) {
+                Log.w(TAG, "Dropping unreadable profiles of " + model, e);
+            }
+        return new JSONObject();
+    }
+}
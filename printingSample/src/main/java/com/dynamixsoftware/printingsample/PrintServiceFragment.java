@@ -26,10 +26,8 @@ import com.dynamixsoftware.printingsdk.IDiscoverListener;
 import com.dynamixsoftware.printingsdk.IDiscoverSmb;
 import com.dynamixsoftware.printingsdk.IDiscoverSmbListener;
 import com.dynamixsoftware.printingsdk.IFindDriversListener;
-import com.dynamixsoftware.printingsdk.IGetDriversListener;
 import com.dynamixsoftware.printingsdk.IPage;
 import com.dynamixsoftware.printingsdk.IPrintListener;
-import com.dynamixsoftware.printingsdk.IServiceCallback;
 import com.dynamixsoftware.printingsdk.ISetLicenseCallback;
 import com.dynamixsoftware.printingsdk.ISetupPrinterListener;
 import com.dynamixsoftware.printingsdk.Printer;
@@ -39,12 +37,13 @@ import com.dynamixsoftware.printingsdk.PrintingSdk;
 import com.dynamixsoftware.printingsdk.Result;
 import com.dynamixsoftware.printingsdk.ResultType;
 import com.dynamixsoftware.printingsdk.SmbFile;
-import com.dynamixsoftware.printingsdk.TransportType;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import androidx.annotation.NonNull;
@@ -53,37 +52,77 @@ import androidx.fragment.app.Fragment;
 
 public class PrintServiceFragment extends Fragment implements View.OnClickListener {
 
+    private static final long GET_DRIVERS_DEADLINE_MS = 15 * 1000;
+
+    private SdkConnection sdkConnection;
+    private SdkConnection.Listener connectionListener;
+    private SdkSupervisor sdkSupervisor;
+    private SdkSupervisor.Listener recoveryListener;
     private PrintingSdk printingSdk;
+    private DriverResolutionCache driverResolutionCache;
+    private DriverPlanner driverPlanner;
+    private LibraryPackPrefetcher libraryPackPrefetcher;
+    private PrintOptionProfiles printOptionProfiles;
 
     private final List<Printer> discoveredPrinters = new ArrayList<>();
     private final List<DriversSearchEntry> driversSearchEntries = new ArrayList<>();
     private final List<DriverHandleEntry> driverHandleEntries = new ArrayList<>();
 
     private IDiscoverSmb discoverSmb;
+    private SmbBrowseCache smbBrowseCache;
 
     private Handler mainHandler = new Handler(Looper.getMainLooper());
 
     @Override
     public void onAttach(final Context context) {
         super.onAttach(context);
-        printingSdk = new PrintingSdk(context);
-        printingSdk.startService(new IServiceCallback() {
+        sdkConnection = PrintingSampleApplication.getSdkConnection(context);
+        printingSdk = sdkConnection.getPrintingSdk();
+        driverResolutionCache = PrintingSampleApplication.getDriverResolutionCache(context);
+        driverPlanner = new DriverPlanner(printingSdk, driverResolutionCache);
+        libraryPackPrefetcher = new LibraryPackPrefetcher(context, printingSdk, driverResolutionCache);
+        libraryPackPrefetcher.start();
+        printOptionProfiles = PrintingSampleApplication.getPrintOptionProfiles(context);
+        final Context appContext = context.getApplicationContext();
+        connectionListener = new SdkConnection.Listener() {
             @Override
-            public void onServiceConnected() {
-                Toast.makeText(context.getApplicationContext(), "Service connected", Toast.LENGTH_SHORT).show();
+            public void onConnected(SdkConnection.Service service) {
+                if (service == SdkConnection.Service.PRINTING_SDK)
+                    Toast.makeText(appContext, "Service connected", Toast.LENGTH_SHORT).show();
             }
 
             @Override
-            public void onServiceDisconnected() {
-                Toast.makeText(context.getApplicationContext(), "Service disconnected", Toast.LENGTH_SHORT).show();
+            public void onDisconnected(SdkConnection.Service service) {
+                if (service == SdkConnection.Service.PRINTING_SDK)
+                    Toast.makeText(appContext, "Service disconnected", Toast.LENGTH_SHORT).show();
             }
-        });
+        };
+        sdkConnection.addListener(connectionListener);
+        sdkSupervisor = PrintingSampleApplication.getSdkSupervisor(context);
+        recoveryListener = new SdkSupervisor.Listener() {
+            @Override
+            public void onRecovered(SdkConnection.Service service, long latencyMs) {
+                if (service == SdkConnection.Service.PRINTING_SDK) {
+                    // the restarted service lost the options applied by the selected profile
+                    printOptionProfiles.invalidate();
+                    toastInMainThread(appContext, "Service reconnected in " + latencyMs + " ms");
+                }
+            }
+        };
+        sdkSupervisor.addListener(recoveryListener);
     }
 
     @Override
     public void onDetach() {
         super.onDetach();
-        printingSdk.stopService();
+        if (smbBrowseCache != null) {
+            smbBrowseCache.close();
+            smbBrowseCache = null;
+        }
+        driverPlanner.shutdown();
+        libraryPackPrefetcher.stop();
+        sdkConnection.removeListener(connectionListener);
+        sdkSupervisor.removeListener(recoveryListener);
     }
 
     @Override
@@ -103,13 +142,25 @@ public class PrintServiceFragment extends Fragment implements View.OnClickListen
         root.findViewById(R.id.setup_recent_printer).setOnClickListener(this);
         root.findViewById(R.id.setup_discovered_printer).setOnClickListener(this);
         root.findViewById(R.id.change_options).setOnClickListener(this);
+        root.findViewById(R.id.option_profiles).setOnClickListener(this);
         root.findViewById(R.id.print_image).setOnClickListener(this);
         return root;
     }
 
 
     @Override
-    public void onClick(View v) {
+    public void onClick(final View v) {
+        // clicks made before the service is bound run as soon as it is
+        sdkConnection.whenReady(SdkConnection.Service.PRINTING_SDK, new Runnable() {
+            @Override
+            public void run() {
+                if (isAdded())
+                    onServiceClick(v);
+            }
+        });
+    }
+
+    private void onServiceClick(View v) {
         final Context appContext = requireContext().getApplicationContext();
         switch (v.getId()) {
             case R.id.set_license:
@@ -131,8 +182,12 @@ public class PrintServiceFragment extends Fragment implements View.OnClickListen
                 });
                 break;
             case R.id.init_current_and_recent_printers:
+                libraryPackPrefetcher.onJobStarted();
                 try {
                     printingSdk.initRecentPrinters(new ISetupPrinterListener.Stub() {
+                        // progress is reported many times, the cached drivers are dropped once at finish
+                        private volatile boolean installing;
+
                         @Override
                         public void start() {
                             toastInMainThread(appContext, "ISetupPrinterListener start");
@@ -141,18 +196,25 @@ public class PrintServiceFragment extends Fragment implements View.OnClickListen
                         @Override
                         public void libraryPackInstallationProcess(int arg0) {
                             toastInMainThread(appContext, "ISetupPrinterListener libraryPackInstallationProcess " + arg0 + " %");
+                            installing = true;
                         }
 
                         @Override
-                        public void finish(Result arg0) {
+                        public void finish(Result arg0) throws RemoteException {
                             toastInMainThread(appContext, "ISetupPrinterListener finish " + arg0.name());
+                            if (installing)
+                                driverResolutionCache.onLibraryPacksChanged();
+                            libraryPackPrefetcher.onJobFinished();
                             if (arg0.getType().equals(ResultType.ERROR_LIBRARY_PACK_NOT_INSTALLED)) {
-                                // printingSdk.setup should be called with forceInstall = true to download required drivers
+                                // printingSdk.setup should be called with forceInstall = true to download required drivers,
+                                // or the library pack is installed in the background at the next idle window
+                                libraryPackPrefetcher.onLibraryPackMissing(printingSdk.getCurrentPrinter());
                             }
                         }
                     });
                 } catch (RemoteException e) {
                     e.printStackTrace();
+                    libraryPackPrefetcher.onJobFinished();
                 }
                 break;
             case R.id.get_current_printer:
@@ -255,6 +317,27 @@ public class PrintServiceFragment extends Fragment implements View.OnClickListen
                 }
                 break;
             case R.id.discover_smb:
+                if (smbBrowseCache != null)
+                    smbBrowseCache.close();
+                final SmbBrowseCache browseCache = new SmbBrowseCache(new SmbBrowseCache.Navigator() {
+                    @Override
+                    public void move(SmbFile target) throws RemoteException {
+                        discoverSmb.move(target);
+                    }
+                }, new SmbBrowseCache.Listener() {
+                    @Override
+                    public void onListing(String path, List<SmbFile> files, boolean fromCache) {
+                        // Show list of SMB files. Call smbBrowseCache.open(SmbBrowseCache.childPath(path, file))
+                        // to change location; levels visited before are answered from cache.
+                        toastInMainThread(appContext, "IDiscoverSmbListener smbFilesFound /" + path + "; " + files.size() + " files" + (fromCache ? " (cached)" : ""));
+                    }
+
+                    @Override
+                    public void onListingFailed(String path) {
+                        toastInMainThread(appContext, "Could not list /" + path);
+                    }
+                });
+                smbBrowseCache = browseCache;
                 try {
                     discoverSmb = printingSdk.startDiscoverSmb(new IDiscoverSmbListener.Stub() {
                         @Override
@@ -264,13 +347,14 @@ public class PrintServiceFragment extends Fragment implements View.OnClickListen
 
                         @Override
                         public void smbFilesFound(List<SmbFile> arg0) {
-                            // Show list of SMB files. This listener is used for navigation.
-                            // You should call discoverSmbControl.move(arg0) to change location.
+                            // This listener is used for navigation. Listings are routed through the browse cache.
+                            browseCache.onFilesFound(arg0);
                         }
 
                         @Override
                         public void showAuthorization() {
                             // You have to ask user for authorization credentials and call discoverSmbControl.login(arg0, arg1);
+                            browseCache.onAuthorizationRequired();
                         }
 
                         @Override
@@ -315,7 +399,14 @@ public class PrintServiceFragment extends Fragment implements View.OnClickListen
                 break;
             case R.id.find_driver:
                 if (!discoveredPrinters.isEmpty()) {
-                    Printer printer = discoveredPrinters.get(0);
+                    final Printer printer = discoveredPrinters.get(0);
+                    List<DriversSearchEntry> cachedEntries = driverResolutionCache.getSearchEntries(printer);
+                    if (cachedEntries != null) {
+                        toastInMainThread(appContext, "IFindDriversListener cached; Found " + cachedEntries.size() + " drivers entries;");
+                        driversSearchEntries.clear();
+                        driversSearchEntries.addAll(cachedEntries);
+                        break;
+                    }
                     try {
                         printingSdk.findDrivers(printer, new IFindDriversListener.Stub() {
                             @Override
@@ -330,6 +421,7 @@ public class PrintServiceFragment extends Fragment implements View.OnClickListen
                                         ((arg0.size() == 0) ? "" : ""));
                                 driversSearchEntries.clear();
                                 driversSearchEntries.addAll(arg0);
+                                driverResolutionCache.putSearchEntries(printer, arg0);
                             }
                         });
                     } catch (RemoteException e) {
@@ -341,34 +433,31 @@ public class PrintServiceFragment extends Fragment implements View.OnClickListen
             case R.id.get_drivers:
                 if (!discoveredPrinters.isEmpty()) {
                     Printer printer = discoveredPrinters.get(0);
-                    TransportType transportType = printer.getTransportTypes().get(0);
-                    if (transportType != null) {
-                        try {
-                            printingSdk.getDriversList(printer, transportType, new IGetDriversListener.Stub() {
-                                @Override
-                                public void start() {
-                                    toastInMainThread(appContext, "IGetDriversListener start");
-                                }
-
-                                @Override
-                                public void finish(List<DriverHandleEntry> arg0) {
-                                    toastInMainThread(appContext, "IGetDriversListener finish");
-                                    driverHandleEntries.clear();
-                                    driverHandleEntries.addAll(arg0);
-                                }
-                            });
-                        } catch (RemoteException e) {
-                            e.printStackTrace();
+                    toastInMainThread(appContext, "IGetDriversListener start");
+                    // All transport types are queried at once and ranked fastest first
+                    driverPlanner.plan(printer, GET_DRIVERS_DEADLINE_MS, new DriverPlanner.Callback() {
+                        @Override
+                        public void onPlanReady(DriverPlanner.DriverPlan plan) {
+                            DriverPlanner.Candidate best = plan.best();
+                            toastInMainThread(appContext, "IGetDriversListener finish; " + plan.candidates.size()
+                                    + " transports with drivers; " + plan.timedOut + " timed out; " + plan.elapsedMs + " ms");
+                            driverHandleEntries.clear();
+                            if (best != null)
+                                driverHandleEntries.addAll(best.driverHandles);
                         }
-                    }
+                    });
                 } else
                     showDialog(getString(R.string.error), "Discover printers first");
                 break;
             case R.id.setup_recent_printer:
                 try {
                     List<Printer> printerList = printingSdk.getRecentPrintersList();
-                    if (!printerList.isEmpty())
-                        printingSdk.setup(printerList.get(0), true, new ISetupPrinterListener.Stub() {
+                    if (!printerList.isEmpty()) {
+                        final Printer printer = printerList.get(0);
+                        libraryPackPrefetcher.onJobStarted();
+                        printingSdk.setup(printer, true, new ISetupPrinterListener.Stub() {
+                            private volatile boolean installing;
+
                             @Override
                             public void start() {
                                 toastInMainThread(appContext, "ISetupPrinterListener start");
@@ -377,29 +466,46 @@ public class PrintServiceFragment extends Fragment implements View.OnClickListen
                             @Override
                             public void libraryPackInstallationProcess(int arg0) {
                                 toastInMainThread(appContext, "ISetupPrinterListener libraryPackInstallationProcess " + arg0 + " %");
+                                installing = true;
                             }
 
                             @Override
                             public void finish(Result arg0) {
                                 toastInMainThread(appContext, "ISetupPrinterListener finish " + arg0.name());
+                                if (installing)
+                                    driverResolutionCache.onLibraryPacksChanged();
+                                libraryPackPrefetcher.onJobFinished();
+                                if (arg0 == Result.OK)
+                                    sdkSupervisor.setCurrentPrinter(printer);
                                 if (arg0.getType().equals(ResultType.ERROR_LIBRARY_PACK_NOT_INSTALLED)) {
                                     // printingSdk.setup should be called with forceInstall = true to download required drivers
+                                    libraryPackPrefetcher.onLibraryPackMissing(printer);
                                 }
                             }
                         });
-                    else
+                    } else
                         showDialog(getString(R.string.error), "No recent printers");
                 } catch (RemoteException e) {
                     e.printStackTrace();
+                    libraryPackPrefetcher.onJobFinished();
                 }
                 break;
             case R.id.setup_discovered_printer:
                 if (!discoveredPrinters.isEmpty()) {
+                    if (driversSearchEntries.isEmpty()) {
+                        // A model resolved before goes straight to its known driver
+                        List<DriversSearchEntry> cachedEntries = driverResolutionCache.getSearchEntries(discoveredPrinters.get(0));
+                        if (cachedEntries != null)
+                            driversSearchEntries.addAll(cachedEntries);
+                    }
                     if (!driversSearchEntries.isEmpty()) {
-                        Printer printer = discoveredPrinters.get(0);
+                        final Printer printer = discoveredPrinters.get(0);
                         DriversSearchEntry driversSearchEntry = driversSearchEntries.get(0);
+                        libraryPackPrefetcher.onJobStarted();
                         try {
                             printingSdk.setup(printer, driversSearchEntry.getDriverHandlesList().get(0), driversSearchEntry.getTransportType(), false, new ISetupPrinterListener.Stub() {
+                                private volatile boolean installing;
+
                                 @Override
                                 public void start() {
                                     toastInMainThread(appContext, "ISetupPrinterListener start");
@@ -408,18 +514,26 @@ public class PrintServiceFragment extends Fragment implements View.OnClickListen
                                 @Override
                                 public void libraryPackInstallationProcess(int arg0) {
                                     toastInMainThread(appContext, "ISetupPrinterListener libraryPackInstallationProcess " + arg0 + " %");
+                                    installing = true;
                                 }
 
                                 @Override
                                 public void finish(Result arg0) {
                                     toastInMainThread(appContext, "ISetupPrinterListener finish " + arg0.name());
+                                    if (installing)
+                                        driverResolutionCache.onLibraryPacksChanged();
+                                    libraryPackPrefetcher.onJobFinished();
+                                    if (arg0 == Result.OK)
+                                        sdkSupervisor.setCurrentPrinter(printer);
                                     if (arg0.getType().equals(ResultType.ERROR_LIBRARY_PACK_NOT_INSTALLED)) {
                                         // printingSdk.setup should be called with forceInstall = true to download required drivers
+                                        libraryPackPrefetcher.onLibraryPackMissing(printer);
                                     }
                                 }
                             });
                         } catch (RemoteException e) {
                             e.printStackTrace();
+                            libraryPackPrefetcher.onJobFinished();
                         }
                     } else
                         showDialog(getString(R.string.error), "Find driver first");
@@ -428,16 +542,18 @@ public class PrintServiceFragment extends Fragment implements View.OnClickListen
                 break;
             case R.id.change_options:
                 try {
-                    Printer currentPrinter = printingSdk.getCurrentPrinter();
-                    if (currentPrinter != null) {
-                        List<PrinterOption> options = currentPrinter.getOptions();
-                        if (options.size() > 0) {
+                    PrinterOptionsSession session = PrinterOptionsSession.ofCurrentPrinter(printingSdk);
+                    if (session != null) {
+                        List<String> optionNames = session.getOptionNames();
+                        if (optionNames.size() > 0) {
                             Random random = new Random();
-                            PrinterOption option = options.get(random.nextInt(options.size()));
+                            PrinterOption option = session.getOption(optionNames.get(random.nextInt(optionNames.size())));
                             PrinterOptionValue currentValue = option.getOptionValue();
                             List<PrinterOptionValue> valuesList = option.getOptionValueList();
                             PrinterOptionValue newValue = valuesList.get(random.nextInt(valuesList.size()));
-                            printingSdk.setCurrentPrinterOptionValue(option, newValue);
+                            // Sent to the service only if the value really changes
+                            session.set(option.getName(), newValue);
+                            printOptionProfiles.invalidate();
                             Toast.makeText(requireContext().getApplicationContext(), "option " + option.getName() + " changed from " + currentValue + " to " + newValue, Toast.LENGTH_LONG).show();
                         }
                     } else
@@ -446,10 +562,30 @@ public class PrintServiceFragment extends Fragment implements View.OnClickListen
                     e.printStackTrace();
                 }
                 break;
+            case R.id.option_profiles:
+                try {
+                    Printer printer = printingSdk.getCurrentPrinter();
+                    if (printer != null) {
+                        final PrinterOptionsSession session = new PrinterOptionsSession(printingSdk, printer);
+                        OptionProfilesDialog.show(requireContext(), printOptionProfiles, DriverResolutionCache.modelKey(printer),
+                                new String[]{PrintOptionProfiles.SCOPE_PRINTER},
+                                new OptionProfilesDialog.OptionsReader() {
+                                    @Override
+                                    public Map<String, String> read(String scope) {
+                                        return session.getProfile();
+                                    }
+                                });
+                    } else
+                        showDialog(getString(R.string.error), "Setup printer first");
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                }
+                break;
             case R.id.print_image:
                 try {
-                    if (printingSdk.getCurrentPrinter() != null) {
-                        List<IPage> pages = new ArrayList<>();
+                    final Printer currentPrinter = printingSdk.getCurrentPrinter();
+                    if (currentPrinter != null) {
+                        final List<IPage> pages = new ArrayList<>();
                         pages.add(new IPage() {
                             @Override
                             public Bitmap getBitmapFragment(Rect fragment) {
@@ -513,52 +649,78 @@ public class PrintServiceFragment extends Fragment implements View.OnClickListen
                                     return null;
                             }
                         });
-                        try {
-                            printingSdk.print(pages, 1, new IPrintListener.Stub() {
-                                @Override
-                                public void startingPrintJob() {
-                                    toastInMainThread(appContext, "IPrintListener startingPrintJob");
-                                }
-
-                                @Override
-                                public void start() {
-                                    toastInMainThread(appContext, "IPrintListener start");
-                                }
-
-                                @Override
-                                public void sendingPage(int arg0, int arg1) {
-                                    toastInMainThread(appContext, "IPrintListener sendingPage " + arg0 + "; progress " + arg1 + "%");
-                                }
-
-                                @Override
-                                public void preparePage(int arg0) {
-                                    toastInMainThread(appContext, "IPrintListener preparePage " + arg0);
-                                }
-
-                                @Override
-                                public boolean needCancel() {
-                                    toastInMainThread(appContext, "IPrintListener needCancel");
-                                    // Return false if cancel needed.
-                                    return false;
-                                }
-
-                                @Override
-                                public void finishingPrintJob() {
-                                    toastInMainThread(appContext, "IPrintListener finishingPrintJob");
-
-                                }
+                        libraryPackPrefetcher.onJobStarted();
+                        // The pages are rendered from the extracted image until the job finishes. The first
+                        // print extracts it, off the main thread
+                        final DocumentCache documentCache = PrintingSampleApplication.getDocumentCache(appContext);
+                        FilesUtils.getFile(appContext, FilesUtils.FILE_PNG, new FilesUtils.FileCallback() {
+                            @Override
+                            public void onFile(final File image) {
+                                documentCache.pin(image);
+                                // Replayed by the supervisor if the service dies before taking the job
+                                sdkSupervisor.submit(SdkConnection.Service.PRINTING_SDK, new SdkSupervisor.Job() {
+                                    @Override
+                                    void run() throws RemoteException {
+                                        printOptionProfiles.submit(printingSdk, currentPrinter, new PrintOptionProfiles.Submission() {
+                                            @Override
+                                            public void submit() throws RemoteException {
+                                                printingSdk.print(pages, 1, new IPrintListener.Stub() {
+                                                    @Override
+                                                    public void startingPrintJob() {
+                                                        toastInMainThread(appContext, "IPrintListener startingPrintJob");
+                                                    }
+
+                                                    @Override
+                                                    public void start() {
+                                                        toastInMainThread(appContext, "IPrintListener start");
+                                                    }
+
+                                                    @Override
+                                                    public void sendingPage(int arg0, int arg1) {
+                                                        toastInMainThread(appContext, "IPrintListener sendingPage " + arg0 + "; progress " + arg1 + "%");
+                                                    }
+
+                                                    @Override
+                                                    public void preparePage(int arg0) {
+                                                        toastInMainThread(appContext, "IPrintListener preparePage " + arg0);
+                                                    }
+
+                                                    @Override
+                                                    public boolean needCancel() {
+                                                        toastInMainThread(appContext, "IPrintListener needCancel");
+                                                        // Return false if cancel needed.
+                                                        return false;
+                                                    }
+
+                                                    @Override
+                                                    public void finishingPrintJob() {
+                                                        toastInMainThread(appContext, "IPrintListener finishingPrintJob");
+
+                                                    }
+
+                                                    @Override
+                                                    public void finish(Result arg0, int arg1, int arg2) {
+                                                        toastInMainThread(appContext, "IPrintListener finish Result " + arg0 +
+                                                                "; Result type " + arg0.getType() +
+                                                                "; Total pages " + arg1 +
+                                                                "; Pages sent " + arg2);
+                                                        libraryPackPrefetcher.onJobFinished();
+                                                        documentCache.unpin(image);
+                                                    }
+                                                });
+                                            }
+                                        });
+                                    }
 
-                                @Override
-                                public void finish(Result arg0, int arg1, int arg2) {
-                                    toastInMainThread(appContext, "IPrintListener finish Result " + arg0 +
-                                            "; Result type " + arg0.getType() +
-                                            "; Total pages " + arg1 +
-                                            "; Pages sent " + arg2);
-                                }
-                            });
-                        } catch (RemoteException e) {
-                            e.printStackTrace();
-                        }
+                                    @Override
+                                    void onFailed(RemoteException e) {
+                                        super.onFailed(e);
+                                        libraryPackPrefetcher.onJobFinished();
+                                        documentCache.unpin(image);
+                                    }
+                                });
+                            }
+                        });
                     } else
                         showDialog(getString(R.string.error), "You must setup printer before print");
                 } catch (RemoteException e) {
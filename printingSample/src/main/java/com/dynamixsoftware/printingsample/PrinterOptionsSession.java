@@ -0,0 +1,148 @@
+package com.dynamixsoftware.printingsample;
+
+import android.os.Parcel;
+import android.os.RemoteException;
+
+import com.dynamixsoftware.printingsdk.Printer;
+import com.dynamixsoftware.printingsdk.PrinterOption;
+import com.dynamixsoftware.printingsdk.PrinterOptionValue;
+import com.dynamixsoftware.printingsdk.PrintingSdk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PrinterOptionsSession - Indexed, diff-based editing of the current printer options.
+ *
+ * Built from one {@link Printer} snapshot, the session indexes options and their values, so
+ * lookups no longer scan {@code List<PrinterOption>}. A desired profile (option name to value
+ * key) is diffed against the snapshot and only the options whose value really changes are sent
+ * to the service.
+ *
+ * Only accessors the sample has always used identify options and values: an option by
+ * {@link PrinterOption#getName()}, a value by its position in
+ * {@link PrinterOption#getOptionValueList()}, which the driver defines and which stays the same
+ * from one session to the next. Values cross the binder as fresh instances, so the current value
+ * is found in that list by comparing marshalled forms, which are never persisted.
+ *
+ * The Printing SDK has no bulk setter, so each changed option still costs one
+ * {@code setCurrentPrinterOptionValue} call; unchanged options and repeated
+ * {@code getCurrentPrinter} round trips are skipped.
+ */
+class PrinterOptionsSession {
+
+    private final PrintingSdk printingSdk;
+    private final Map<String, PrinterOption> options = new LinkedHashMap<>();
+    private final Map<String, Map<String, PrinterOptionValue>> values = new HashMap<>();
+    private final Map<String, String> current = new LinkedHashMap<>();
+
+    PrinterOptionsSession(PrintingSdk printingSdk, Printer printer) {
+        this.printingSdk = printingSdk;
+        for (PrinterOption option : printer.getOptions()) {
+            String name = option.getName();
+            options.put(name, option);
+            Map<String, PrinterOptionValue> optionValues = new LinkedHashMap<>();
+            List<PrinterOptionValue> valueList = option.getOptionValueList();
+            for (int i = 0; i < valueList.size(); i++)
+                optionValues.put(Integer.toString(i), valueList.get(i));
+            values.put(name, optionValues);
+            current.put(name, keyOf(optionValues, option.getOptionValue()));
+        }
+    }
+
+    /**
+     * @return key of {@code value} among {@code optionValues}, or {@code null} if it is not one
+     *         of them
+     */
+    private static String keyOf(Map<String, PrinterOptionValue> optionValues, PrinterOptionValue value) {
+        if (value == null)
+            return null;
+        byte[] marshalled = marshall(value);
+        for (Map.Entry<String, PrinterOptionValue> entry : optionValues.entrySet())
+            if (entry.getValue() == value || Arrays.equals(marshalled, marshall(entry.getValue())))
+                return entry.getKey();
+        return null;
+    }
+
+    private static byte[] marshall(PrinterOptionValue value) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            value.writeToParcel(parcel, 0);
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Opens a session on the current printer, or returns {@code null} if no printer is set up.
+     */
+    static PrinterOptionsSession ofCurrentPrinter(PrintingSdk printingSdk) throws RemoteException {
+        Printer printer = printingSdk.getCurrentPrinter();
+        return printer != null ? new PrinterOptionsSession(printingSdk, printer) : null;
+    }
+
+    List<String> getOptionNames() {
+        return Collections.unmodifiableList(new ArrayList<>(options.keySet()));
+    }
+
+    PrinterOption getOption(String name) {
+        return options.get(name);
+    }
+
+    /**
+     * @return current value key of every option, suitable as a profile for {@link #apply(Map)}
+     */
+    Map<String, String> getProfile() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(current));
+    }
+
+    /**
+     * @return the options of {@code desired} whose value differs from the snapshot; unknown
+     *         options and values are ignored
+     */
+    Map<PrinterOption, PrinterOptionValue> diff(Map<String, String> desired) {
+        Map<PrinterOption, PrinterOptionValue> changes = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : desired.entrySet()) {
+            String name = entry.getKey();
+            Map<String, PrinterOptionValue> optionValues = values.get(name);
+            if (optionValues == null || entry.getValue() == null || entry.getValue().equals(current.get(name)))
+                continue;
+            PrinterOptionValue value = optionValues.get(entry.getValue());
+            if (value != null)
+                changes.put(options.get(name), value);
+        }
+        return changes;
+    }
+
+    /**
+     * Applies only the changed values of {@code desired}.
+     *
+     * @return number of options sent to the service
+     */
+    int apply(Map<String, String> desired) throws RemoteException {
+        Map<PrinterOption, PrinterOptionValue> changes = diff(desired);
+        for (Map.Entry<PrinterOption, PrinterOptionValue> change : changes.entrySet()) {
+            String name = change.getKey().getName();
+            printingSdk.setCurrentPrinterOptionValue(change.getKey(), change.getValue());
+            current.put(name, keyOf(values.get(name), change.getValue()));
+        }
+        return changes.size();
+    }
+
+    /**
+     * Applies a single option change, skipping the call if the value is already set.
+     *
+     * @param value One of the values of the option's {@code getOptionValueList()}
+     */
+    boolean set(String optionName, PrinterOptionValue value) throws RemoteException {
+        Map<String, PrinterOptionValue> optionValues = values.get(optionName);
+        String key = optionValues != null ? keyOf(optionValues, value) : null;
+        return key != null && apply(Collections.singletonMap(optionName, key)) > 0;
+    }
+}
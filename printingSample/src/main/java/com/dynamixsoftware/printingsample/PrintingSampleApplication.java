@@ -0,0 +1,138 @@
+package com.dynamixsoftware.printingsample;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * PrintingSampleApplication - Owns the state shared by all screens: the {@link SdkConnection}
+ * bound at startup, the {@link SdkSupervisor} keeping it alive, the {@link DocumentCache}, the
+ * {@link UriGrantCache}, the {@link PrintHandResolver}, the {@link DriverResolutionCache} and the
+ * {@link PrintOptionProfiles}.
+ */
+public class PrintingSampleApplication extends Application {
+
+    private static final String TAG = "PrintingSampleApplication";
+
+    private SdkConnection sdkConnection;
+    private SdkSupervisor sdkSupervisor;
+    private DocumentCache documentCache;
+    private UriGrantCache uriGrantCache;
+    private PrintHandResolver printHandResolver;
+    private DriverResolutionCache driverResolutionCache;
+    private PrintOptionProfiles printOptionProfiles;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        documentCache = new DocumentCache(this);
+        uriGrantCache = new UriGrantCache(this);
+        printHandResolver = new PrintHandResolver(this, uriGrantCache);
+        driverResolutionCache = new DriverResolutionCache(this);
+        printOptionProfiles = new PrintOptionProfiles(this);
+        sdkConnection = new SdkConnection(this);
+        sdkSupervisor = new SdkSupervisor(sdkConnection);
+        sdkConnection.connect();
+        SystemIntegrityProbe.start(this);
+        initializeAntiSpoofingValidation();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                AntiSpoofingValidator.loadTrustedDomains(PrintingSampleApplication.this);
+            }
+        }, "TrustedDomainsLoader").start();
+    }
+
+    /**
+     * Initialize and demonstrate Anti-Spoofing validation, once per process
+     * This validates against DNS Spoofing, WDM Spoofing, Domain Spoofing, and System Hijacking
+     */
+    private void initializeAntiSpoofingValidation() {
+        Log.i(TAG, "=== Initializing Anti-Spoofing Security Layer ===");
+        
+        // Run comprehensive security validation; it may wait for the system integrity probe,
+        // so keep it off the main thread
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                AntiSpoofingValidator.ValidationResult result = 
+                    AntiSpoofingValidator.validateAll(PrintingSampleApplication.this, "https://montinode.com");
+                
+                Log.i(TAG, "Security validation result: " + result);
+                
+                if (!result.isValid()) {
+                    Log.w(TAG, "Security concerns detected: " + result.getMessage());
+                } else {
+                    Log.i(TAG, "All anti-spoofing checks passed successfully");
+                }
+            }
+        }, "AntiSpoofingValidation").start();
+        
+        // Optional: Run demo validations
+        // Uncomment to see detailed validation examples in logs
+        // runAntiSpoofingDemo();
+    }
+    
+    /**
+     * Run comprehensive anti-spoofing demonstrations
+     * Uncomment the call to this method in initializeAntiSpoofingValidation() to see demos
+     */
+    private void runAntiSpoofingDemo() {
+        Log.i(TAG, "=== Running Anti-Spoofing Demonstrations ===");
+        
+        // DNS Spoofing Demo
+        AntiSpoofingDemo.demonstrateDNSValidation();
+        
+        // WDM Spoofing Demo
+        AntiSpoofingDemo.demonstrateWDMValidation();
+        
+        // Domain Spoofing Demo
+        AntiSpoofingDemo.demonstrateDomainValidation();
+        
+        // System Hijacking Demo
+        AntiSpoofingDemo.demonstrateSystemHijackingValidation(this);
+        
+        // Comprehensive Demo
+        AntiSpoofingDemo.demonstrateComprehensiveValidation(this, "https://montinode.com");
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // The app went to the background: a good time to hand the statistics to telemetry
+        if (level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            Log.i(TAG, "SDK calls " + sdkConnection.getCallMonitor().snapshot());
+            Log.i(TAG, "Document cache " + documentCache.snapshot());
+            Log.i(TAG, "Validation verdicts " + AntiSpoofingValidator.getCacheSnapshot());
+        }
+    }
+
+    static SdkConnection getSdkConnection(Context context) {
+        return ((PrintingSampleApplication) context.getApplicationContext()).sdkConnection;
+    }
+
+    static SdkSupervisor getSdkSupervisor(Context context) {
+        return ((PrintingSampleApplication) context.getApplicationContext()).sdkSupervisor;
+    }
+
+    static DocumentCache getDocumentCache(Context context) {
+        return ((PrintingSampleApplication) context.getApplicationContext()).documentCache;
+    }
+
+    static UriGrantCache getUriGrantCache(Context context) {
+        return ((PrintingSampleApplication) context.getApplicationContext()).uriGrantCache;
+    }
+
+    static PrintHandResolver getPrintHandResolver(Context context) {
+        return ((PrintingSampleApplication) context.getApplicationContext()).printHandResolver;
+    }
+
+    static DriverResolutionCache getDriverResolutionCache(Context context) {
+        return ((PrintingSampleApplication) context.getApplicationContext()).driverResolutionCache;
+    }
+
+    static PrintOptionProfiles getPrintOptionProfiles(Context context) {
+        return ((PrintingSampleApplication) context.getApplicationContext()).printOptionProfiles;
+    }
+}
@@ -0,0 +1,196 @@
+package com.dynamixsoftware.printingsample;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.webkit.MimeTypeMap;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SampleDocumentsProvider - Serves the sample documents to PrintHand straight from the APK, with
+ * no copy on storage.
+ *
+ * content://AUTHORITY/assets/NAME opens an asset. Assets stored uncompressed (see noCompress in
+ * build.gradle) are handed out as an {@link AssetFileDescriptor} of the APK region, so PrintHand
+ * reads the APK directly and sees the exact length. Compressed assets are streamed through a pipe.
+ *
+ * content://AUTHORITY/files/NAME opens a document generated by the app in the
+ * {@link FilesUtils} directory.
+ *
+ * Queries answer {@link OpenableColumns#DISPLAY_NAME} and {@link OpenableColumns#SIZE}.
+ */
+public class SampleDocumentsProvider extends ContentProvider {
+
+    static final String AUTHORITY = "com.dynamixsoftware.printingsample.documents";
+
+    private static final String PATH_ASSETS = "assets";
+    private static final String PATH_FILES = "files";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] DEFAULT_PROJECTION = {OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+
+    static Uri getAssetUri(String filename) {
+        return new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(AUTHORITY).appendPath(PATH_ASSETS).appendPath(filename).build();
+    }
+
+    static Uri getFileUri(String filename) {
+        return new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(AUTHORITY).appendPath(PATH_FILES).appendPath(filename).build();
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        String filename = getFilename(uri);
+        if (filename == null)
+            return null;
+        if (projection == null)
+            projection = DEFAULT_PROJECTION;
+        Object[] row = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            if (OpenableColumns.DISPLAY_NAME.equals(projection[i]))
+                row[i] = filename;
+            else if (OpenableColumns.SIZE.equals(projection[i])) {
+                long length = getLength(uri, filename);
+                row[i] = length >= 0 ? length : null;
+            }
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        String filename = getFilename(uri);
+        if (filename == null)
+            return null;
+        int dot = filename.lastIndexOf('.');
+        String mimeType = dot >= 0 ? MimeTypeMap.getSingleton().getMimeTypeFromExtension(filename.substring(dot + 1).toLowerCase(Locale.US)) : null;
+        return mimeType != null ? mimeType : "application/octet-stream";
+    }
+
+    @Override
+    public AssetFileDescriptor openAssetFile(Uri uri, String mode) throws FileNotFoundException {
+        String filename = getFilename(uri);
+        if (filename == null || !"r".equals(mode))
+            throw new FileNotFoundException(uri.toString());
+        if (isAsset(uri)) {
+            try {
+                return getContext().getAssets().openFd(filename);
+            } catch (FileNotFoundException e) {
+                // compressed in the APK, so there is no file region to hand out
+                return new AssetFileDescriptor(openPipeHelper(uri, mode, null, filename, new AssetPipeWriter()), 0, AssetFileDescriptor.UNKNOWN_LENGTH);
+            } catch (IOException e) {
+                throw new FileNotFoundException(e.getMessage());
+            }
+        }
+        File file = new File(FilesUtils.getFilesDir(getContext()), filename);
+        return new AssetFileDescriptor(ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY), 0, file.length());
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        String filename = getFilename(uri);
+        if (filename == null || !"r".equals(mode))
+            throw new FileNotFoundException(uri.toString());
+        // A bare descriptor cannot describe a region of the APK, so assets are piped here
+        if (isAsset(uri))
+            return openPipeHelper(uri, mode, null, filename, new AssetPipeWriter());
+        return ParcelFileDescriptor.open(new File(FilesUtils.getFilesDir(getContext()), filename), ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Read only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read only");
+    }
+
+    private static boolean isAsset(Uri uri) {
+        return PATH_ASSETS.equals(uri.getPathSegments().get(0));
+    }
+
+    // Only direct children of the two roots are served, never a path leaving them
+    private static String getFilename(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() != 2 || !(PATH_ASSETS.equals(segments.get(0)) || PATH_FILES.equals(segments.get(0))))
+            return null;
+        String filename = segments.get(1);
+        return filename.isEmpty() || filename.equals(".") || filename.equals("..") || filename.indexOf('/') >= 0 ? null : filename;
+    }
+
+    private long getLength(Uri uri, String filename) {
+        if (!isAsset(uri)) {
+            File file = new File(FilesUtils.getFilesDir(getContext()), filename);
+            return file.isFile() ? file.length() : -1;
+        }
+        AssetFileDescriptor descriptor = null;
+        try {
+            descriptor = getContext().getAssets().openFd(filename);
+            return descriptor.getLength();
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            if (descriptor != null)
+                try {
+                    descriptor.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+        }
+    }
+
+    private class AssetPipeWriter implements PipeDataWriter<String> {
+        @Override
+        public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType, Bundle opts, String filename) {
+            InputStream inputStream = null;
+            OutputStream outputStream = null;
+            try {
+                try {
+                    inputStream = getContext().getAssets().open(filename, AssetManager.ACCESS_STREAMING);
+                    outputStream = new ParcelFileDescriptor.AutoCloseOutputStream(output);
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = inputStream.read(buffer)) != -1)
+                        outputStream.write(buffer, 0, read);
+                } finally {
+                    if (inputStream != null)
+                        inputStream.close();
+                    if (outputStream != null)
+                        outputStream.close();
+                }
+            } catch (IOException e) {
+                // the reader went away
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.dynamixsoftware.printingsample;
+
+import android.os.RemoteException;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SdkCallMonitor - Latency histograms, deadlines and failure counters for the remote calls made
+ * to the Printing SDK and Intent API services.
+ *
+ * {@link InstrumentedPrintingSdk} and {@link InstrumentedIntentAPI} route every remote call
+ * through {@link #call(String, Call)}, which runs it on the caller's thread, times it into a
+ * per-method histogram and, when a deadline is configured for the method, counts and logs the
+ * calls that overran it. A binder call cannot be abandoned without leaving it running in the
+ * service, so an overrun is only reported, never turned into a failure. Asynchronous results
+ * reported through listeners are counted by result type with
+ * {@link #recordResult(String, Object)}.
+ *
+ * {@link #snapshot()} returns everything as JSON for device telemetry.
+ */
+class SdkCallMonitor {
+
+    private static final String TAG = "SdkCallMonitor";
+
+    // Upper bounds of the histogram buckets in ms; the last bucket counts everything above
+    private static final long[] BUCKET_BOUNDS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+    interface Call<T> {
+        T invoke() throws RemoteException;
+    }
+
+    private static final class MethodStats {
+        final long[] buckets = new long[BUCKET_BOUNDS_MS.length + 1];
+        long calls;
+        long failures;
+        long overruns;
+        long totalMs;
+        long maxMs;
+    }
+
+    // guarded by this
+    private final Map<String, MethodStats> methods = new TreeMap<>();
+    private final Map<String, Map<String, Long>> results = new TreeMap<>();
+    private final Map<String, Long> deadlines = new HashMap<>();
+    private long defaultDeadlineMs;
+
+    /**
+     * Sets the deadline of the calls without a deadline of their own; 0 disables it.
+     */
+    synchronized void setDefaultDeadline(long deadlineMs) {
+        defaultDeadlineMs = deadlineMs;
+    }
+
+    /**
+     * Sets the deadline of {@code method}; 0 disables it, even if a default deadline is set.
+     */
+    synchronized void setDeadline(String method, long deadlineMs) {
+        deadlines.put(method, deadlineMs);
+    }
+
+    private synchronized long getDeadline(String method) {
+        Long deadline = deadlines.get(method);
+        return deadline != null ? deadline : defaultDeadlineMs;
+    }
+
+    /**
+     * Runs {@code call}, recording its latency under {@code method}.
+     */
+    <T> T call(String method, Call<T> call) throws RemoteException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.invoke();
+            failed = false;
+            return result;
+        } finally {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            long deadline = getDeadline(method);
+            boolean overran = deadline > 0 && elapsedMs > deadline;
+            if (overran)
+                Log.w(TAG, method + " took " + elapsedMs + " ms, over its deadline of " + deadline + " ms");
+            record(method, elapsedMs, failed, overran);
+        }
+    }
+
+    private synchronized void record(String method, long elapsedMs, boolean failed, boolean overran) {
+        MethodStats stats = methods.get(method);
+        if (stats == null) {
+            stats = new MethodStats();
+            methods.put(method, stats);
+        }
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MS.length && elapsedMs > BUCKET_BOUNDS_MS[bucket])
+            bucket++;
+        stats.buckets[bucket]++;
+        stats.calls++;
+        stats.totalMs += elapsedMs;
+        stats.maxMs = Math.max(stats.maxMs, elapsedMs);
+        if (failed)
+            stats.failures++;
+        if (overran)
+            stats.overruns++;
+    }
+
+    /**
+     * Counts a result reported by the service for an asynchronous {@code method}, e.g. the
+     * result type passed to a print or setup listener.
+     */
+    synchronized void recordResult(String method, Object resultType) {
+        Map<String, Long> counts = results.get(method);
+        if (counts == null) {
+            counts = new TreeMap<>();
+            results.put(method, counts);
+        }
+        String key = String.valueOf(resultType);
+        Long count = counts.get(key);
+        counts.put(key, count != null ? count + 1 : 1);
+    }
+
+    /**
+     * @return the statistics collected since the start of the process, e.g.
+     * {"bucketsMs":[1,2,...],"methods":{"getCurrentPrinter":{"calls":12,...,"histogram":[...]}},
+     * "results":{"print":{"OK":3}}}
+     */
+    synchronized JSONObject snapshot() {
+        JSONObject snapshot = new JSONObject();
+        try {
+            JSONArray bounds = new JSONArray();
+            for (long bound : BUCKET_BOUNDS_MS)
+                bounds.put(bound);
+            snapshot.put("bucketsMs", bounds);
+            JSONObject methodsJson = new JSONObject();
+            for (Map.Entry<String, MethodStats> entry : methods.entrySet()) {
+                MethodStats stats = entry.getValue();
+                JSONObject json = new JSONObject();
+                json.put("calls", stats.calls);
+                json.put("failures", stats.failures);
+                json.put("overruns", stats.overruns);
+                json.put("totalMs", stats.totalMs);
+                json.put("maxMs", stats.maxMs);
+                JSONArray histogram = new JSONArray();
+                for (long count : stats.buckets)
+                    histogram.put(count);
+                json.put("histogram", histogram);
+                methodsJson.put(entry.getKey(), json);
+            }
+            snapshot.put("methods", methodsJson);
+            JSONObject resultsJson = new JSONObject();
+            for (Map.Entry<String, Map<String, Long>> entry : results.entrySet())
+                resultsJson.put(entry.getKey(), new JSONObject(entry.getValue()));
+            snapshot.put("results", resultsJson);
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not build snapshot", e);
+        }
+        return snapshot;
+    }
+}
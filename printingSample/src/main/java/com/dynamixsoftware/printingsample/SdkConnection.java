@@ -0,0 +1,314 @@
+package com.dynamixsoftware.printingsample;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.dynamixsoftware.intentapi.IntentAPI;
+import com.dynamixsoftware.intentapi.Result;
+import com.dynamixsoftware.printingsdk.IServiceCallback;
+import com.dynamixsoftware.printingsdk.PrintingSdk;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SdkConnection - Application scoped connection to the Printing SDK and Intent API services.
+ *
+ * Both services are bound once, on a background thread, when the application starts, and stay
+ * bound across fragment attach/detach, so switching tabs no longer pays the bind cost again.
+ * Work that needs a service either awaits its readiness on a worker thread or is queued with
+ * {@link #whenReady(Service, Runnable)} and runs on the main thread as soon as it is connected.
+ *
+ * Remote calls are timed by a {@link SdkCallMonitor}, which reports those that overrun their
+ * deadline.
+ *
+ * The Intent API instance is created with the application context; features that start PrintHand
+ * activities still need an {@link IntentAPI} created with the activity.
+ */
+class SdkConnection implements SdkSupervisor.Connection {
+
+    private static final String TAG = "SdkConnection";
+
+    private static final long CALL_DEADLINE_MS = 10 * 1000;
+
+    enum Service {
+        PRINTING_SDK,
+        INTENT_API
+    }
+
+    interface Listener {
+        void onConnected(Service service);
+
+        void onDisconnected(Service service);
+    }
+
+    /**
+     * Binds the services and reports their state through {@link #onConnected(Service)} and
+     * {@link #onDisconnected(Service)}. A fake connector can stand in for PrintHand to connect
+     * and kill the services on demand.
+     */
+    interface Connector {
+        void bind(Service service, SdkConnection connection) throws RemoteException;
+
+        void unbind(Service service);
+    }
+
+    private final SdkCallMonitor callMonitor = new SdkCallMonitor();
+    private final PrintingSdk printingSdk;
+    private final IntentAPI intentApi;
+    private final Connector connector;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // guarded by this
+    private final Map<Service, CountDownLatch> readiness = new EnumMap<>(Service.class);
+    private final Map<Service, List<Runnable>> pending = new EnumMap<>(Service.class);
+    private boolean connecting;
+
+    private volatile com.dynamixsoftware.intentapi.IServiceCallback intentApiCallback;
+
+    SdkConnection(Context context) {
+        this(context, null);
+    }
+
+    SdkConnection(Context context, Connector connector) {
+        Context appContext = context.getApplicationContext();
+        printingSdk = new InstrumentedPrintingSdk(appContext, callMonitor);
+        intentApi = new InstrumentedIntentAPI(appContext, callMonitor);
+        callMonitor.setDefaultDeadline(CALL_DEADLINE_MS);
+        // Prints take as long as the printer needs, an overrun says nothing about the service
+        callMonitor.setDeadline("printingSdk.print", 0);
+        callMonitor.setDeadline("intentApi.printDocument", 0);
+        callMonitor.setDeadline("intentApi.printJob", 0);
+        callMonitor.setDeadline("intentApi.printUri", 0);
+        this.connector = connector != null ? connector : new ServiceConnector();
+        for (Service service : Service.values()) {
+            readiness.put(service, new CountDownLatch(1));
+            pending.put(service, new ArrayList<Runnable>());
+        }
+    }
+
+    @Override
+    public PrintingSdk getPrintingSdk() {
+        return printingSdk;
+    }
+
+    IntentAPI getIntentApi() {
+        return intentApi;
+    }
+
+    SdkCallMonitor getCallMonitor() {
+        return callMonitor;
+    }
+
+    /**
+     * Binds both services in the background. Calling it again while bound does nothing.
+     */
+    synchronized void connect() {
+        if (connecting)
+            return;
+        connecting = true;
+        for (Service service : Service.values())
+            bind(service, false, null);
+    }
+
+    @Override
+    public void reconnect(Service service, Runnable onFailed) {
+        bind(service, true, onFailed);
+    }
+
+    private void bind(final Service service, final boolean unbindFirst, final Runnable onFailed) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                if (unbindFirst)
+                    connector.unbind(service);
+                try {
+                    connector.bind(service, SdkConnection.this);
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                    if (onFailed != null)
+                        onFailed.run();
+                }
+                Log.d(TAG, service + " bind requested in " + (System.currentTimeMillis() - start) + " ms");
+            }
+        });
+    }
+
+    @Override
+    public synchronized boolean isReady(Service service) {
+        return readiness.get(service).getCount() == 0;
+    }
+
+    /**
+     * Blocks until {@code service} is connected. Must not be called on the main thread, which
+     * delivers the connection callbacks.
+     *
+     * @return {@code false} if the service did not connect in time
+     */
+    boolean await(Service service, long timeout, TimeUnit unit) throws InterruptedException {
+        CountDownLatch latch;
+        synchronized (this) {
+            latch = readiness.get(service);
+        }
+        return latch.await(timeout, unit);
+    }
+
+    /**
+     * Runs {@code action} on the main thread once {@code service} is connected; immediately if it
+     * already is.
+     */
+    void whenReady(Service service, Runnable action) {
+        synchronized (this) {
+            if (!isReady(service)) {
+                pending.get(service).add(action);
+                return;
+            }
+        }
+        if (Looper.myLooper() == Looper.getMainLooper())
+            action.run();
+        else
+            mainHandler.post(action);
+    }
+
+    @Override
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Sets the callback receiving the Intent API rendering events (file open, library download,
+     * password and errors). Connection events are reported to the {@link Listener}s instead.
+     */
+    void setIntentApiCallback(com.dynamixsoftware.intentapi.IServiceCallback callback) {
+        intentApiCallback = callback;
+    }
+
+    void onConnected(final Service service) {
+        final List<Runnable> actions;
+        synchronized (this) {
+            readiness.get(service).countDown();
+            actions = new ArrayList<>(pending.get(service));
+            pending.get(service).clear();
+        }
+        Log.i(TAG, service + " connected");
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : listeners)
+                    listener.onConnected(service);
+                for (Runnable action : actions)
+                    action.run();
+            }
+        });
+    }
+
+    void onDisconnected(final Service service) {
+        synchronized (this) {
+            if (readiness.get(service).getCount() == 0)
+                readiness.put(service, new CountDownLatch(1));
+        }
+        Log.w(TAG, service + " disconnected");
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : listeners)
+                    listener.onDisconnected(service);
+            }
+        });
+    }
+
+    private class ServiceConnector implements Connector {
+
+        @Override
+        public void bind(Service service, SdkConnection connection) throws RemoteException {
+            if (service == Service.PRINTING_SDK)
+                printingSdk.startService(new IServiceCallback() {
+                    @Override
+                    public void onServiceConnected() {
+                        onConnected(Service.PRINTING_SDK);
+                    }
+
+                    @Override
+                    public void onServiceDisconnected() {
+                        onDisconnected(Service.PRINTING_SDK);
+                    }
+                });
+            else
+                intentApi.runService(new IntentApiCallback());
+        }
+
+        @Override
+        public void unbind(Service service) {
+            if (service == Service.PRINTING_SDK)
+                printingSdk.stopService();
+            else
+                intentApi.stopService(null);
+        }
+    }
+
+    private class IntentApiCallback extends com.dynamixsoftware.intentapi.IServiceCallback.Stub {
+
+        @Override
+        public void onServiceConnected() {
+            onConnected(Service.INTENT_API);
+        }
+
+        @Override
+        public void onServiceDisconnected() {
+            onDisconnected(Service.INTENT_API);
+        }
+
+        @Override
+        public void onFileOpen(int progress, int finished) throws RemoteException {
+            com.dynamixsoftware.intentapi.IServiceCallback callback = intentApiCallback;
+            if (callback != null)
+                callback.onFileOpen(progress, finished);
+        }
+
+        @Override
+        public void onLibraryDownload(int progress) throws RemoteException {
+            com.dynamixsoftware.intentapi.IServiceCallback callback = intentApiCallback;
+            if (callback != null)
+                callback.onLibraryDownload(progress);
+        }
+
+        @Override
+        public boolean onRenderLibraryCheck(boolean renderLibrary, boolean fontLibrary) throws RemoteException {
+            com.dynamixsoftware.intentapi.IServiceCallback callback = intentApiCallback;
+            return callback == null || callback.onRenderLibraryCheck(renderLibrary, fontLibrary);
+        }
+
+        @Override
+        public String onPasswordRequired() throws RemoteException {
+            com.dynamixsoftware.intentapi.IServiceCallback callback = intentApiCallback;
+            return callback != null ? callback.onPasswordRequired() : null;
+        }
+
+        @Override
+        public void onError(Result result) throws RemoteException {
+            com.dynamixsoftware.intentapi.IServiceCallback callback = intentApiCallback;
+            if (callback != null)
+                callback.onError(result);
+            else
+                Log.w(TAG, "Intent API error " + result);
+        }
+    }
+}
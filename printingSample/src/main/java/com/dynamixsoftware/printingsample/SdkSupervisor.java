@@ -0,0 +1,481 @@
+package com.dynamixsoftware.printingsample;
+
+import android.os.DeadObjectException;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.dynamixsoftware.printingsdk.ISetupPrinterListener;
+import com.dynamixsoftware.printingsdk.Printer;
+import com.dynamixsoftware.printingsdk.PrintingSdk;
+import com.dynamixsoftware.printingsdk.Result;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SdkSupervisor - Keeps the {@link SdkConnection} services alive and replays the work lost when
+ * one of them dies.
+ *
+ * When a service disconnects, or a job finds it dead ({@link DeadObjectException}), the supervisor
+ * binds the service again with jittered exponential backoff. One bind is in flight at a time: the
+ * next attempt is scheduled only once the pending one failed or timed out, so a slow service is
+ * given the time to finish binding. Once it is back, the supervisor notifies the
+ * {@link Listener}s (which drop cached option state, so the selected option profile is applied
+ * again on the next submit) and replays the jobs parked while the service was down. For the
+ * Printing SDK, it first restores the current printer: the restore runs in the background, and
+ * Printing SDK jobs stay parked until it finished, while other work goes on.
+ *
+ * Jobs submitted while the service is down are parked and run once it is back. A job that fails
+ * while running is replayed only if it is idempotent: a print that reached PrintHand before the
+ * service died may still be printing. Any other {@link RemoteException} comes from a live service
+ * and fails the job without a reconnect.
+ *
+ * Reconnect latency, from the disconnect to the service being usable again, is recorded per
+ * service and logged after each recovery.
+ */
+class SdkSupervisor {
+
+    private static final String TAG = "SdkSupervisor";
+
+    private static final long BACKOFF_BASE_MS = 500;
+    private static final long BACKOFF_MAX_MS = 60 * 1000;
+    private static final long BIND_TIMEOUT_MS = 15 * 1000;
+    private static final int MAX_JOB_ATTEMPTS = 3;
+    private static final long RESTORE_TIMEOUT_MS = 30 * 1000;
+
+    /**
+     * Work submitted to a service. It is parked while the service is down and run once it is
+     * back. If it is {@link #isIdempotent() idempotent}, it is also run again after a reconnect
+     * when the service dies under it, at most {@link #MAX_JOB_ATTEMPTS} times.
+     */
+    abstract static class Job {
+        private int attempts;
+
+        abstract void run() throws RemoteException;
+
+        /**
+         * @return {@code true} if running the job twice has the same effect as running it once.
+         *         Jobs that print are not, and are never replayed once started.
+         */
+        boolean isIdempotent() {
+            return false;
+        }
+
+        /**
+         * Called when the job is given up.
+         */
+        void onFailed(RemoteException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The part of {@link SdkConnection} the supervisor drives; a fake stands in for it in tests.
+     */
+    interface Connection {
+        void addListener(SdkConnection.Listener listener);
+
+        boolean isReady(SdkConnection.Service service);
+
+        /**
+         * Drops the binding of {@code service} and binds it again in the background, running
+         * {@code onFailed} if the bind could not be requested.
+         */
+        void reconnect(SdkConnection.Service service, Runnable onFailed);
+
+        PrintingSdk getPrintingSdk();
+    }
+
+    /**
+     * Runs the supervisor's work, one task at a time, and tells the time; a fake drives the
+     * supervisor in virtual time in tests.
+     */
+    interface Scheduler {
+        /**
+         * @return milliseconds since some fixed point, never going backwards
+         */
+        long now();
+
+        void execute(Runnable task);
+
+        void schedule(Runnable task, long delayMs);
+    }
+
+    interface Listener {
+        /**
+         * Called on the supervisor thread once {@code service} is back, before the parked jobs
+         * are replayed.
+         */
+        void onRecovered(SdkConnection.Service service, long latencyMs);
+    }
+
+    /**
+     * Reconnect latency statistics of one service.
+     */
+    static final class ReconnectStats {
+        int reconnects;
+        int attempts;
+        long lastLatencyMs;
+        long maxLatencyMs;
+        long totalLatencyMs;
+
+        long getAverageLatencyMs() {
+            return reconnects > 0 ? totalLatencyMs / reconnects : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "reconnects " + reconnects + ", attempts " + attempts + ", latency last " + lastLatencyMs
+                    + " ms, avg " + getAverageLatencyMs() + " ms, max " + maxLatencyMs + " ms";
+        }
+    }
+
+    private final Connection connection;
+    private final long backoffBaseMs;
+    private final long bindTimeoutMs;
+    private final Scheduler scheduler;
+    private final Random random = new Random();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // guarded by this
+    private final Map<SdkConnection.Service, Deque<Job>> parked = new EnumMap<>(SdkConnection.Service.class);
+    private final Map<SdkConnection.Service, Long> downSince = new EnumMap<>(SdkConnection.Service.class);
+    private final Map<SdkConnection.Service, Integer> downAttempts = new EnumMap<>(SdkConnection.Service.class);
+    // attempt whose bind is in flight, by service
+    private final Map<SdkConnection.Service, Integer> pendingBinds = new EnumMap<>(SdkConnection.Service.class);
+    private final Map<SdkConnection.Service, ReconnectStats> stats = new EnumMap<>(SdkConnection.Service.class);
+    private Printer currentPrinter;
+    // bumped by every restore of the current printer; Printing SDK jobs park while one runs
+    private int restore;
+    private boolean restoring;
+
+    SdkSupervisor(Connection connection) {
+        this(connection, BACKOFF_BASE_MS, BIND_TIMEOUT_MS, new Scheduler() {
+            private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+            @Override
+            public long now() {
+                return SystemClock.elapsedRealtime();
+            }
+
+            @Override
+            public void execute(Runnable task) {
+                executor.execute(task);
+            }
+
+            @Override
+            public void schedule(Runnable task, long delayMs) {
+                executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    SdkSupervisor(Connection connection, long backoffBaseMs, long bindTimeoutMs, Scheduler scheduler) {
+        this.connection = connection;
+        this.backoffBaseMs = backoffBaseMs;
+        this.bindTimeoutMs = bindTimeoutMs;
+        this.scheduler = scheduler;
+        for (SdkConnection.Service service : SdkConnection.Service.values()) {
+            parked.put(service, new ArrayDeque<Job>());
+            stats.put(service, new ReconnectStats());
+        }
+        connection.addListener(new SdkConnection.Listener() {
+            @Override
+            public void onConnected(final SdkConnection.Service service) {
+                scheduler.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        recovered(service);
+                    }
+                });
+            }
+
+            @Override
+            public void onDisconnected(SdkConnection.Service service) {
+                lost(service);
+            }
+        });
+    }
+
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Runs {@code job} on the supervisor thread once {@code service} is connected.
+     */
+    void submit(final SdkConnection.Service service, final Job job) {
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                runJob(service, job);
+            }
+        });
+    }
+
+    /**
+     * Remembers the printer to restore as the Printing SDK current printer after a reconnect.
+     */
+    synchronized void setCurrentPrinter(Printer printer) {
+        currentPrinter = printer;
+    }
+
+    synchronized ReconnectStats getStats(SdkConnection.Service service) {
+        ReconnectStats source = stats.get(service);
+        ReconnectStats copy = new ReconnectStats();
+        copy.reconnects = source.reconnects;
+        copy.attempts = source.attempts;
+        copy.lastLatencyMs = source.lastLatencyMs;
+        copy.maxLatencyMs = source.maxLatencyMs;
+        copy.totalLatencyMs = source.totalLatencyMs;
+        return copy;
+    }
+
+    private void runJob(SdkConnection.Service service, Job job) {
+        if (!connection.isReady(service) || isRestoring(service)) {
+            park(service, job);
+            return;
+        }
+        try {
+            job.run();
+        } catch (DeadObjectException e) {
+            if (job.isIdempotent() && ++job.attempts < MAX_JOB_ATTEMPTS) {
+                Log.w(TAG, service + " died under a job, replaying it after reconnect", e);
+                park(service, job);
+            } else
+                job.onFailed(e);
+            lost(service);
+        } catch (RemoteException e) {
+            // the service is alive and reported an error of its own
+            job.onFailed(e);
+        }
+    }
+
+    private synchronized void park(SdkConnection.Service service, Job job) {
+        parked.get(service).add(job);
+    }
+
+    private synchronized boolean isRestoring(SdkConnection.Service service) {
+        return service == SdkConnection.Service.PRINTING_SDK && restoring;
+    }
+
+    /**
+     * Starts the backoff loop for {@code service} unless it is already running.
+     */
+    private void lost(final SdkConnection.Service service) {
+        synchronized (this) {
+            if (downSince.containsKey(service))
+                return;
+            downSince.put(service, scheduler.now());
+            downAttempts.put(service, 0);
+        }
+        scheduleAttempt(service, 0);
+    }
+
+    private void scheduleAttempt(final SdkConnection.Service service, final int attempt) {
+        long delay = backoff(attempt);
+        Log.i(TAG, "Reconnecting " + service + " in " + delay + " ms, attempt " + (attempt + 1));
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                attempt(service, attempt);
+            }
+        }, delay);
+    }
+
+    private void attempt(final SdkConnection.Service service, final int attempt) {
+        synchronized (this) {
+            if (!downSince.containsKey(service) || pendingBinds.containsKey(service))
+                return;
+            downAttempts.put(service, attempt + 1);
+            pendingBinds.put(service, attempt);
+        }
+        connection.reconnect(service, new Runnable() {
+            @Override
+            public void run() {
+                scheduler.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        attemptFailed(service, attempt, "bind failed");
+                    }
+                });
+            }
+        });
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                attemptFailed(service, attempt, "bind timed out");
+            }
+        }, bindTimeoutMs);
+    }
+
+    /**
+     * Schedules the next attempt, unless {@code attempt} is no longer the one in flight.
+     */
+    private void attemptFailed(SdkConnection.Service service, int attempt, String reason) {
+        synchronized (this) {
+            Integer pending = pendingBinds.get(service);
+            if (pending == null || pending != attempt)
+                return;
+            pendingBinds.remove(service);
+            if (!downSince.containsKey(service))
+                return;
+        }
+        Log.w(TAG, service + " attempt " + (attempt + 1) + ": " + reason);
+        scheduleAttempt(service, attempt + 1);
+    }
+
+    // Exponential backoff with equal jitter, so that clients do not retry in lockstep
+    long backoff(int attempt) {
+        long ceiling = backoffBaseMs << Math.min(attempt, 16);
+        if (ceiling > BACKOFF_MAX_MS || ceiling <= 0)
+            ceiling = BACKOFF_MAX_MS;
+        long half = ceiling / 2;
+        synchronized (random) {
+            return half + (long) (random.nextDouble() * half);
+        }
+    }
+
+    private void recovered(SdkConnection.Service service) {
+        // a connect reported before the service died again
+        if (!connection.isReady(service))
+            return;
+        Long since;
+        int attempts;
+        synchronized (this) {
+            since = downSince.remove(service);
+            pendingBinds.remove(service);
+            Integer counted = downAttempts.remove(service);
+            attempts = counted != null ? counted : 0;
+        }
+        if (since != null) {
+            long latency = scheduler.now() - since;
+            ReconnectStats serviceStats;
+            synchronized (this) {
+                serviceStats = stats.get(service);
+                serviceStats.reconnects++;
+                serviceStats.attempts += attempts;
+                serviceStats.lastLatencyMs = latency;
+                serviceStats.maxLatencyMs = Math.max(serviceStats.maxLatencyMs, latency);
+                serviceStats.totalLatencyMs += latency;
+            }
+            Log.i(TAG, service + " recovered in " + latency + " ms after " + attempts + " attempts; " + getStats(service));
+            for (Listener listener : listeners)
+                listener.onRecovered(service, latency);
+            // the parked jobs are replayed once the restore finished
+            if (service == SdkConnection.Service.PRINTING_SDK && restoreCurrentPrinter())
+                return;
+        } else if (service == SdkConnection.Service.PRINTING_SDK)
+            rememberCurrentPrinter();
+        replay(service);
+    }
+
+    private void replay(SdkConnection.Service service) {
+        List<Job> jobs;
+        synchronized (this) {
+            jobs = new ArrayList<>(parked.get(service));
+            parked.get(service).clear();
+        }
+        if (!jobs.isEmpty())
+            Log.i(TAG, "Replaying " + jobs.size() + " " + service + " jobs");
+        for (Job job : jobs)
+            runJob(service, job);
+    }
+
+    private void rememberCurrentPrinter() {
+        try {
+            Printer printer = connection.getPrintingSdk().getCurrentPrinter();
+            if (printer != null)
+                setCurrentPrinter(printer);
+        } catch (RemoteException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sets up the remembered printer again without waiting for the setup to finish, so the
+     * supervisor thread stays free meanwhile.
+     *
+     * @return {@code true} if a restore was started; Printing SDK jobs are replayed once it ends
+     */
+    private boolean restoreCurrentPrinter() {
+        final Printer expected;
+        synchronized (this) {
+            expected = currentPrinter;
+        }
+        if (expected == null)
+            return false;
+        PrintingSdk printingSdk = connection.getPrintingSdk();
+        final int started;
+        try {
+            Printer printer = printingSdk.getCurrentPrinter();
+            if (printer != null && expected.getName().equals(printer.getName()))
+                return false;
+            synchronized (this) {
+                started = ++restore;
+                restoring = true;
+            }
+            final AtomicBoolean ended = new AtomicBoolean();
+            printingSdk.setup(expected, false, new ISetupPrinterListener.Stub() {
+                @Override
+                public void start() {
+                }
+
+                @Override
+                public void libraryPackInstallationProcess(int arg0) {
+                }
+
+                @Override
+                public void finish(final Result arg0) {
+                    if (ended.compareAndSet(false, true))
+                        scheduler.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (arg0 != Result.OK)
+                                    Log.w(TAG, "Could not restore current printer " + expected.getName());
+                                restored(started);
+                            }
+                        });
+                }
+            });
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (ended.compareAndSet(false, true)) {
+                        Log.w(TAG, "Restoring current printer " + expected.getName() + " timed out");
+                        restored(started);
+                    }
+                }
+            }, RESTORE_TIMEOUT_MS);
+            return true;
+        } catch (RemoteException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void restored(int ended) {
+        synchronized (this) {
+            // a later restore, after the service died again, now owns the parked jobs
+            if (ended != restore)
+                return;
+            restoring = false;
+        }
+        replay(SdkConnection.Service.PRINTING_SDK);
+    }
+}
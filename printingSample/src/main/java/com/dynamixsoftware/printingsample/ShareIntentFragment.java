@@ -2,30 +2,71 @@ package com.dynamixsoftware.printingsample;
 
 import android.app.Activity;
 import android.content.ActivityNotFoundException;
+import android.content.ContentResolver;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 public class ShareIntentFragment extends Fragment implements View.OnClickListener {
 
-    private static final String PRINT_HAND_FREEMIUM = "com.dynamixsoftware.printhand";
-    private static final String PRINT_HAND_PREMIUM = "com.dynamixsoftware.printhand.premium";
+    private static final String TAG = "ShareIntentFragment";
 
     private static final int REQUEST_CODE_IMAGE = 1101;
+    private static final int REQUEST_CODE_BULK_SHARE = 1102;
+
+    private static final String STATE_BULK_SHARE_FILE = "bulkShareFile";
+    private static final String STATE_BULK_SHARE_BATCH = "bulkShareBatch";
 
     private static final int REQUEST_CODE_LICENSE = 1100;
     public final static int RESULT_ACTIVATION_SUCCESS = 2766;
     public final static int RESULT_ACTIVATION_ERROR = 2989;
 
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // The share in progress lives in bulkShareFile; bulkShare is null until it was read back
+    private File bulkShareFile;
+    private BulkShare bulkShare;
+    private int bulkShareBatch;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        // the activity may have been recreated while PrintHand handled a batch
+        if (savedInstanceState != null) {
+            String path = savedInstanceState.getString(STATE_BULK_SHARE_FILE);
+            if (path != null) {
+                bulkShareFile = new File(path);
+                bulkShareBatch = savedInstanceState.getInt(STATE_BULK_SHARE_BATCH);
+            }
+        }
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        // only a cursor: the batches themselves may be too large for the transaction
+        if (bulkShareFile != null) {
+            outState.putString(STATE_BULK_SHARE_FILE, bulkShareFile.getPath());
+            outState.putInt(STATE_BULK_SHARE_BATCH, bulkShareBatch);
+        }
+    }
+
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         View root = inflater.inflate(R.layout.fragment_share_intent, container, false);
@@ -56,6 +97,70 @@ public class ShareIntentFragment extends Fragment implements View.OnClickListene
         }
         if (requestCode == REQUEST_CODE_IMAGE && resultCode == Activity.RESULT_CANCELED)
             showDialog(R.string.cancelled, R.string.message_share_image_cancelled);
+        if (requestCode == REQUEST_CODE_BULK_SHARE && (bulkShare != null || bulkShareFile != null)) {
+            bulkShareBatch++;
+            sendNextBulkShareBatch();
+        }
+    }
+
+    // Batches are sent one after another, each once PrintHand is done with the previous one
+    private void sendNextBulkShareBatch() {
+        if (bulkShare == null) {
+            loadBulkShare();
+            return;
+        }
+        if (bulkShareBatch >= bulkShare.getBatchCount()) {
+            endBulkShare();
+            return;
+        }
+        if (startPrintHandActivityForResultFailed(bulkShare.buildIntent(bulkShareBatch), REQUEST_CODE_BULK_SHARE)) {
+            endBulkShare();
+            showStartPrintHandActivityErrorDialog();
+            return;
+        }
+        Toast.makeText(requireContext().getApplicationContext(), "Batch " + (bulkShareBatch + 1) + " of " + bulkShare.getBatchCount() + ", " + bulkShare.getBatchSize(bulkShareBatch) + " documents", Toast.LENGTH_SHORT).show();
+    }
+
+    // After a recreation the share is read back from its file, off the main thread
+    private void loadBulkShare() {
+        final File file = bulkShareFile;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final BulkShare share = BulkShare.load(file);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isAdded() || bulkShareFile != file)
+                            return;
+                        if (share == null) {
+                            endBulkShare();
+                            Toast.makeText(requireContext().getApplicationContext(), "Share of multiple images stopped, share them again", Toast.LENGTH_LONG).show();
+                            return;
+                        }
+                        bulkShare = share;
+                        sendNextBulkShareBatch();
+                    }
+                });
+            }
+        }).start();
+    }
+
+    private void endBulkShare() {
+        deleteLater(bulkShareFile);
+        bulkShareFile = null;
+        bulkShare = null;
+    }
+
+    private static void deleteLater(final File file) {
+        if (file != null)
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (!file.delete())
+                        Log.w(TAG, "Could not delete " + file);
+                }
+            }).start();
     }
 
     @Override
@@ -79,20 +184,46 @@ public class ShareIntentFragment extends Fragment implements View.OnClickListene
                 break;
             }
             case R.id.share_image_multiple: {
-                Intent intent = new Intent(Intent.ACTION_SEND_MULTIPLE);
                 Uri uri = FilesUtils.getFileUriWithPermission(requireContext(), FilesUtils.FILE_PNG);
-                ArrayList<Uri> urisList = new ArrayList<>();
+                final List<Uri> urisList = new ArrayList<>();
                 urisList.add(uri);
                 urisList.add(uri);
                 urisList.add(uri);
-                intent.putExtra(Intent.EXTRA_STREAM, urisList);
-                intent.setType("image/*");
-                intent.setFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-                if (startPrintHandActivityFailed(intent))
-                    showStartPrintHandActivityErrorDialog();
+                final ContentResolver contentResolver = requireContext().getContentResolver();
+                final File file = BulkShare.newFile(requireContext().getCacheDir());
+                // Deduplication may read the documents, keep it off the main thread
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        final BulkShare share = BulkShare.prepare(contentResolver, urisList, "image/*");
+                        boolean saved;
+                        try {
+                            share.save(file);
+                            saved = true;
+                        } catch (IOException e) {
+                            Log.w(TAG, "Could not save share, it will not survive a recreation", e);
+                            if (file.exists() && !file.delete())
+                                Log.w(TAG, "Could not delete " + file);
+                            saved = false;
+                        }
+                        final boolean resumable = saved;
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (!isAdded()) {
+                                    deleteLater(file);
+                                    return;
+                                }
+                                endBulkShare();
+                                bulkShareFile = resumable ? file : null;
+                                bulkShare = share;
+                                bulkShareBatch = 0;
+                                sendNextBulkShareBatch();
+                            }
+                        });
+                    }
+                }).start();
                 break;
-
-
             }
             case R.id.share_image_return: {
                 Intent intent = new Intent(Intent.ACTION_VIEW); // can be ACTION_SEND - see share_image_action_send for properly configure intent
@@ -149,17 +280,15 @@ public class ShareIntentFragment extends Fragment implements View.OnClickListene
     }
 
     private boolean startPrintHandActivityFailed(Intent intent) {
-        return startActivityFailed(intent, PRINT_HAND_FREEMIUM)
-                && startActivityFailed(intent, PRINT_HAND_PREMIUM);
-    }
-
-    private boolean startActivityFailed(Intent intent, String packageName) {
-        return startActivityForResultFailed(intent, packageName, -1);
+        return startPrintHandActivityForResultFailed(intent, -1);
     }
 
+    // Only installed PrintHand apps are tried, normally just one
     private boolean startPrintHandActivityForResultFailed(Intent intent, int requestCode) {
-        return startActivityForResultFailed(intent, PRINT_HAND_FREEMIUM, requestCode)
-                && startActivityForResultFailed(intent, PRINT_HAND_PREMIUM, requestCode);
+        for (String packageName : PrintingSampleApplication.getPrintHandResolver(requireContext()).getInstalledPackages())
+            if (!startActivityForResultFailed(intent, packageName, requestCode))
+                return false;
+        return true;
     }
 
     private boolean startActivityForResultFailed(Intent intent, String packageName, int requestCode) {
@@ -0,0 +1,377 @@
+package com.dynamixsoftware.printingsample;
+
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.dynamixsoftware.printingsdk.IDiscoverSmb;
+import com.dynamixsoftware.printingsdk.SmbFile;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SmbBrowseCache - Hierarchical cache of SMB share listings for {@link IDiscoverSmb} navigation.
+ *
+ * Every {@code IDiscoverSmb.move(...)} re-enumerates the share over the network before
+ * {@code smbFilesFound} fires. This cache keeps the listing of every visited level keyed by
+ * its path, so revisiting a level answers from memory immediately:
+ *   - Fresh node   : listing delivered from cache, no network round trip
+ *   - Stale node   : cached listing delivered at once, refresh queued in the background
+ *   - Unknown node : move issued with priority, listing delivered when it arrives
+ *
+ * The SDK keeps a single browse cursor and reports listings without saying which level they
+ * belong to, so all moves (user, refresh and prefetch) go through one serial queue and every
+ * listing is attributed to the move currently in flight. Refreshes and prefetches wait until the
+ * user has not opened a level for {@link #BROWSE_QUIET_MS}, and afterwards the cursor is moved
+ * back to the level the user is on.
+ *
+ * At most {@link #MAX_NODES} levels are kept; the least recently used ones are dropped first,
+ * except the levels the user can open from where they are.
+ */
+class SmbBrowseCache {
+
+    private static final String TAG = "SmbBrowseCache";
+
+    /** Path of the share root, i.e. the listing reported right after discovery starts. */
+    static final String ROOT = "";
+
+    private static final char SEPARATOR = '/';
+
+    /** Default lifetime of a cached listing. */
+    static final long DEFAULT_TTL_MS = 60 * 1000;
+
+    /** Number of expanded (recently opened) levels kept fresh in the background. */
+    private static final int MAX_EXPANDED_NODES = 8;
+
+    /** Number of likely-next children prefetched after opening a level. */
+    private static final int PREFETCH_LIMIT = 2;
+
+    /** Most levels kept in the cache. */
+    private static final int MAX_NODES = 2048;
+
+    /** Time since the user last opened a level before background moves may use the cursor. */
+    static final long BROWSE_QUIET_MS = 3 * 1000;
+
+    /** Moves the browse cursor; normally backed by {@link IDiscoverSmb}. */
+    interface Navigator {
+        void move(SmbFile target) throws RemoteException;
+    }
+
+    /** Receives listings requested through {@link #open(String)}. */
+    interface Listener {
+        void onListing(String path, List<SmbFile> files, boolean fromCache);
+
+        /**
+         * Called when the level at {@code path} cannot be listed: it is not known, e.g. no
+         * listing reported it, or moving to it failed.
+         */
+        void onListingFailed(String path);
+    }
+
+    private static final class Node {
+        final String path;
+        final SmbFile file;
+        List<SmbFile> listing;
+        long loadedAt;
+        long ttlMs;
+        int visits;
+
+        Node(String path, SmbFile file, long ttlMs) {
+            this.path = path;
+            this.file = file;
+            this.ttlMs = ttlMs;
+        }
+
+        boolean isFresh(long now) {
+            return listing != null && now - loadedAt < ttlMs;
+        }
+    }
+
+    private final Navigator navigator;
+    private final Listener listener;
+    private final long defaultTtlMs;
+
+    // Access-ordered, so that the least recently used levels are dropped first
+    private final LinkedHashMap<String, Node> nodes = new LinkedHashMap<>(16, 0.75f, true);
+    // Access-ordered: the eldest entry is the level opened least recently
+    private final LinkedHashMap<String, Node> expanded = new LinkedHashMap<String, Node>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Node> eldest) {
+            return size() > MAX_EXPANDED_NODES;
+        }
+    };
+    private final Deque<String> pendingLoads = new ArrayDeque<>();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private String inFlightPath = ROOT;
+    private String requestedPath = ROOT;
+    // level the user is on, and the level the cursor is at or null if unknown
+    private String currentPath = ROOT;
+    private String cursorPath = ROOT;
+    private long lastOpenAt = SystemClock.elapsedRealtime();
+    private boolean pumpScheduled;
+    private boolean closed;
+
+    SmbBrowseCache(Navigator navigator, Listener listener) {
+        this(navigator, listener, DEFAULT_TTL_MS);
+    }
+
+    SmbBrowseCache(Navigator navigator, Listener listener, long defaultTtlMs) {
+        this.navigator = navigator;
+        this.listener = listener;
+        this.defaultTtlMs = defaultTtlMs;
+        nodes.put(ROOT, new Node(ROOT, null, defaultTtlMs));
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refreshExpanded();
+            }
+        }, defaultTtlMs, defaultTtlMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the path of a file listed at {@code parentPath}.
+     */
+    static String childPath(String parentPath, SmbFile file) {
+        return parentPath.isEmpty() ? file.getName() : parentPath + SEPARATOR + file.getName();
+    }
+
+    /**
+     * Overrides the lifetime of a single level, e.g. a short TTL for a busy drop folder.
+     */
+    synchronized void setTtl(String path, long ttlMs) {
+        Node node = nodes.get(path);
+        if (node != null)
+            node.ttlMs = ttlMs;
+    }
+
+    /**
+     * Opens a level previously reported by a listing (or {@link #ROOT}). An unknown level is
+     * reported to {@link Listener#onListingFailed(String)}.
+     *
+     * @return {@code true} if the listing was answered from cache
+     */
+    boolean open(String path) {
+        List<SmbFile> cached;
+        synchronized (this) {
+            if (closed)
+                return false;
+            Node node = nodes.get(path);
+            if (node == null)
+                cached = null;
+            else {
+                node.visits++;
+                expanded.put(path, node);
+                currentPath = path;
+                lastOpenAt = SystemClock.elapsedRealtime();
+                cached = node.listing;
+                if (cached != null) {
+                    if (!node.isFresh(lastOpenAt))
+                        enqueueLoad(node, false);
+                    prefetchChildren(node, lastOpenAt);
+                } else {
+                    requestedPath = path;
+                    enqueueLoad(node, true);
+                    return false;
+                }
+            }
+        }
+        if (cached == null) {
+            Log.w(TAG, "open: unknown path " + path);
+            listener.onListingFailed(path);
+            return false;
+        }
+        listener.onListing(path, cached, true);
+        return true;
+    }
+
+    /**
+     * Feeds a listing reported by {@code IDiscoverSmbListener.smbFilesFound}.
+     */
+    void onFilesFound(List<SmbFile> files) {
+        String path;
+        boolean deliver;
+        synchronized (this) {
+            if (closed)
+                return;
+            path = inFlightPath != null ? inFlightPath : ROOT;
+            inFlightPath = null;
+            cursorPath = path;
+            Node node = nodes.get(path);
+            node.listing = Collections.unmodifiableList(new ArrayList<>(files));
+            node.loadedAt = SystemClock.elapsedRealtime();
+            for (SmbFile file : files) {
+                String childPath = childPath(path, file);
+                if (!nodes.containsKey(childPath))
+                    nodes.put(childPath, new Node(childPath, file, defaultTtlMs));
+            }
+            evictLocked();
+            deliver = path.equals(requestedPath);
+            if (deliver) {
+                requestedPath = null;
+                prefetchChildren(node, node.loadedAt);
+            }
+            pumpLocked();
+        }
+        if (deliver)
+            listener.onListing(path, files, false);
+    }
+
+    /**
+     * Called when the share asks for credentials: the move in flight will not report a listing
+     * until the user logs in, so background work is dropped.
+     */
+    synchronized void onAuthorizationRequired() {
+        pendingLoads.clear();
+    }
+
+    void close() {
+        synchronized (this) {
+            closed = true;
+            pendingLoads.clear();
+        }
+        executor.shutdownNow();
+    }
+
+    private void refreshExpanded() {
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            for (Node node : expanded.values())
+                if (node.listing != null && !node.isFresh(now))
+                    enqueueLoad(node, false);
+        }
+    }
+
+    // Likely-next levels are the children this user opened most often before
+    private void prefetchChildren(Node parent, long now) {
+        List<Node> candidates = new ArrayList<>();
+        for (SmbFile file : parent.listing) {
+            Node child = nodes.get(childPath(parent.path, file));
+            if (child != null && child.visits > 0 && !child.isFresh(now))
+                candidates.add(child);
+        }
+        Collections.sort(candidates, new Comparator<Node>() {
+            @Override
+            public int compare(Node a, Node b) {
+                return b.visits - a.visits;
+            }
+        });
+        for (int i = 0; i < candidates.size() && i < PREFETCH_LIMIT; i++)
+            enqueueLoad(candidates.get(i), false);
+    }
+
+    private void enqueueLoad(Node node, boolean urgent) {
+        if (node.file == null)
+            return; // the root listing is only reported when discovery starts
+        if (node.path.equals(inFlightPath))
+            return;
+        Iterator<String> iterator = pendingLoads.iterator();
+        while (iterator.hasNext())
+            if (iterator.next().equals(node.path)) {
+                if (!urgent)
+                    return;
+                iterator.remove();
+            }
+        if (urgent)
+            pendingLoads.addFirst(node.path);
+        else
+            pendingLoads.addLast(node.path);
+        pumpLocked();
+    }
+
+    private void pumpLocked() {
+        if (inFlightPath != null || closed)
+            return;
+        if (pendingLoads.isEmpty()) {
+            restoreCursorLocked();
+            if (pendingLoads.isEmpty())
+                return;
+        }
+        // background moves would delay the user's next move and take the cursor away from them
+        long quietFor = SystemClock.elapsedRealtime() - lastOpenAt;
+        if (!pendingLoads.peekFirst().equals(requestedPath) && (requestedPath != null || quietFor < BROWSE_QUIET_MS)) {
+            if (!pumpScheduled) {
+                pumpScheduled = true;
+                executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (SmbBrowseCache.this) {
+                            pumpScheduled = false;
+                            pumpLocked();
+                        }
+                    }
+                }, Math.max(BROWSE_QUIET_MS - quietFor, 0), TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+        final String path = pendingLoads.pollFirst();
+        final SmbFile target = nodes.get(path).file;
+        inFlightPath = path;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    navigator.move(target);
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                    boolean requested;
+                    synchronized (SmbBrowseCache.this) {
+                        if (path.equals(inFlightPath))
+                            inFlightPath = null;
+                        // the cursor may or may not have moved
+                        cursorPath = null;
+                        requested = path.equals(requestedPath);
+                        if (requested)
+                            requestedPath = null;
+                        pumpLocked();
+                    }
+                    if (requested)
+                        listener.onListingFailed(path);
+                }
+            }
+        });
+    }
+
+    // After background moves, moves the cursor back to the level the user is on. The root has no
+    // file to move to, so a cursor left elsewhere stays there until the user's next move.
+    private void restoreCursorLocked() {
+        if (cursorPath == null || cursorPath.equals(currentPath))
+            return;
+        Node current = nodes.get(currentPath);
+        if (current != null && current.file != null)
+            pendingLoads.addLast(currentPath);
+    }
+
+    private void evictLocked() {
+        Iterator<Node> iterator = nodes.values().iterator();
+        while (nodes.size() > MAX_NODES && iterator.hasNext()) {
+            Node node = iterator.next();
+            if (isPinned(node.path))
+                continue;
+            iterator.remove();
+            expanded.remove(node.path);
+        }
+    }
+
+    // Levels still referenced, or that the user can open from where they are
+    private boolean isPinned(String path) {
+        if (path.equals(ROOT) || path.equals(inFlightPath) || path.equals(requestedPath) || path.equals(currentPath))
+            return true;
+        if (expanded.containsKey(path) || pendingLoads.contains(path))
+            return true;
+        int separator = path.lastIndexOf(SEPARATOR);
+        return (separator < 0 ? ROOT : path.substring(0, separator)).equals(currentPath);
+    }
+}
@@ -0,0 +1,149 @@
+package com.dynamixsoftware.printingsample;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * SystemIntegrityProbe - Collects the facts about the device and build that system hijacking
+ * validation relies on: root indicators, test-keys, emulator and debuggable.
+ *
+ * None of them change while the process runs, so they are probed once per process, on a
+ * background thread started by {@link #start(Context)}, and kept in an immutable
+ * {@link Snapshot}. Probing stats the usual {@code su} locations, so it is kept off the main
+ * thread; once it is done, {@link #get(Context)} costs nothing.
+ */
+class SystemIntegrityProbe {
+
+    private static final String TAG = "SystemIntegrityProbe";
+
+    // Common root indicators
+    private static final String[] ROOT_PATHS = {
+        "/system/app/Superuser.apk",
+        "/sbin/su",
+        "/system/bin/su",
+        "/system/xbin/su",
+        "/data/local/xbin/su",
+        "/data/local/bin/su",
+        "/system/sd/xbin/su",
+        "/system/bin/failsafe/su",
+        "/data/local/su"
+    };
+
+    static final class Snapshot {
+        final boolean rooted;
+        final boolean testKeys;
+        final boolean emulator;
+        final boolean debuggable;
+
+        Snapshot(boolean rooted, boolean testKeys, boolean emulator, boolean debuggable) {
+            this.rooted = rooted;
+            this.testKeys = testKeys;
+            this.emulator = emulator;
+            this.debuggable = debuggable;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{rooted=" + rooted + ", testKeys=" + testKeys + ", emulator=" + emulator
+                + ", debuggable=" + debuggable + '}';
+        }
+    }
+
+    // guarded by SystemIntegrityProbe.class; null until started
+    private static FutureTask<Snapshot> probe;
+
+    /**
+     * Starts probing on a background thread unless it is already started.
+     */
+    static void start(Context context) {
+        FutureTask<Snapshot> task;
+        synchronized (SystemIntegrityProbe.class) {
+            if (probe != null)
+                return;
+            task = probe = newProbe(context.getApplicationContext());
+        }
+        new Thread(task, "SystemIntegrityProbe").start();
+    }
+
+    /**
+     * @return the snapshot, probing on the calling thread if nothing started the probe yet, or
+     *         waiting for a probe still running
+     */
+    static Snapshot get(Context context) {
+        FutureTask<Snapshot> task;
+        synchronized (SystemIntegrityProbe.class) {
+            if (probe == null)
+                probe = newProbe(context.getApplicationContext());
+            task = probe;
+        }
+        // no-op if the probe already ran or is running on another thread
+        task.run();
+        boolean interrupted = false;
+        try {
+            while (true)
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    // the probe is short, finish waiting and keep the interrupt for the caller
+                    interrupted = true;
+                }
+        } catch (ExecutionException e) {
+            // the probes catch their own failures, so this is a bug
+            throw new IllegalStateException("System integrity probe failed", e.getCause());
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    private static FutureTask<Snapshot> newProbe(final Context appContext) {
+        return new FutureTask<>(new Callable<Snapshot>() {
+            @Override
+            public Snapshot call() {
+                Snapshot snapshot = new Snapshot(isDeviceRooted(), hasTestKeys(), isEmulator(), isDebuggable(appContext));
+                Log.d(TAG, "Probed " + snapshot);
+                return snapshot;
+            }
+        });
+    }
+
+    private static boolean isDeviceRooted() {
+        for (String path : ROOT_PATHS)
+            if (new File(path).exists())
+                return true;
+        return false;
+    }
+
+    private static boolean isDebuggable(Context context) {
+        return (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+    }
+
+    // test-keys indicate a custom or unsigned build
+    private static boolean hasTestKeys() {
+        try {
+            String buildTags = Build.TAGS;
+            return buildTags != null && buildTags.contains("test-keys");
+        } catch (Exception e) {
+            Log.w(TAG, "Error checking system properties", e);
+            return false;
+        }
+    }
+
+    private static boolean isEmulator() {
+        return Build.FINGERPRINT.startsWith("generic")
+            || Build.FINGERPRINT.startsWith("unknown")
+            || Build.MODEL.contains("google_sdk")
+            || Build.MODEL.contains("Emulator")
+            || Build.MODEL.contains("Android SDK built for x86")
+            || Build.MANUFACTURER.contains("Genymotion")
+            || (Build.BRAND.startsWith("generic") && Build.DEVICE.startsWith("generic"))
+            || "google_sdk".equals(Build.PRODUCT);
+    }
+}
@@ -0,0 +1,274 @@
+package com.dynamixsoftware.printingsample;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * TrustedDomainIndex - Reversed-label trie over an allowlist of trusted domains, sized for
+ * allowlists of 100k+ tenant domains.
+ *
+ * "api.montinode.com" is stored as the path com -> montinode -> api, and the node a domain ends
+ * at holds that domain. Each node keeps its children in an open-addressing table keyed by label.
+ * Lookups hash and compare labels in place in the queried string, so they allocate nothing, and
+ * a host is checked in one table probe per label however long the allowlist is.
+ *
+ * The same domains are kept in a {@link LookalikeDomainIndex} and by {@link ConfusableSkeleton}
+ * skeleton to find the trusted domains a host imitates.
+ *
+ * Matching is case-sensitive, as it was against the former {@code HashSet}; allowlist entries are
+ * lowercased when added. An index is immutable once built and safe to share between threads.
+ */
+class TrustedDomainIndex {
+
+    private static final String TAG = "TrustedDomainIndex";
+
+    private static final class Node {
+        // the trusted domain ending at this node, or null
+        String domain;
+        // open-addressing table, null until the first child is added
+        String[] labels;
+        Node[] children;
+        int size;
+
+        Node get(String text, int start, int end, int hash) {
+            if (labels == null)
+                return null;
+            int length = end - start;
+            int mask = labels.length - 1;
+            for (int i = spread(hash) & mask; labels[i] != null; i = (i + 1) & mask) {
+                String label = labels[i];
+                if (label.length() == length && text.regionMatches(start, label, 0, length))
+                    return children[i];
+            }
+            return null;
+        }
+
+        Node getOrAdd(String label) {
+            Node child = get(label, 0, label.length(), label.hashCode());
+            if (child != null)
+                return child;
+            // keep the table at most half full so probes stay short and always end
+            if (labels == null || (size + 1) * 2 > labels.length)
+                resize(labels == null ? 2 : labels.length * 2);
+            child = new Node();
+            put(label, child);
+            size++;
+            return child;
+        }
+
+        private void resize(int capacity) {
+            String[] oldLabels = labels;
+            Node[] oldChildren = children;
+            labels = new String[capacity];
+            children = new Node[capacity];
+            if (oldLabels != null)
+                for (int i = 0; i < oldLabels.length; i++)
+                    if (oldLabels[i] != null)
+                        put(oldLabels[i], oldChildren[i]);
+        }
+
+        private void put(String label, Node child) {
+            int mask = labels.length - 1;
+            int i = spread(label.hashCode()) & mask;
+            while (labels[i] != null)
+                i = (i + 1) & mask;
+            labels[i] = label;
+            children[i] = child;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    // Most edits findLookalike() can be asked for
+    static final int MAX_LOOKALIKE_DISTANCE = 2;
+
+    private final Node root = new Node();
+    private final LookalikeDomainIndex lookalikes = new LookalikeDomainIndex(MAX_LOOKALIKE_DISTANCE);
+    // skeleton -> first trusted domain with that skeleton
+    private final Map<String, String> skeletons = new HashMap<>();
+    private int size;
+
+    /**
+     * Adds {@code domain} to the allowlist. Entries without a dot or with an empty label are
+     * skipped, since they would trust a whole top-level domain or could never match.
+     *
+     * @return {@code true} if the domain was added
+     */
+    boolean add(String domain) {
+        domain = domain.trim().toLowerCase(Locale.ROOT);
+        if (domain.indexOf('.') < 0 || domain.startsWith(".") || domain.endsWith(".") || domain.contains("..")) {
+            Log.w(TAG, "Skipping invalid trusted domain '" + domain + "'");
+            return false;
+        }
+        Node node = root;
+        int end = domain.length();
+        while (end > 0) {
+            int dot = domain.lastIndexOf('.', end - 1);
+            node = node.getOrAdd(domain.substring(dot + 1, end));
+            end = dot;
+        }
+        if (node.domain == null) {
+            node.domain = domain;
+            lookalikes.add(domain);
+            String skeleton = ConfusableSkeleton.skeleton(domain);
+            if (!skeletons.containsKey(skeleton))
+                skeletons.put(skeleton, domain);
+            size++;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the domains listed in {@code inputStream}, one per line, UTF-8. Blank lines and lines
+     * starting with '#' are ignored. The stream is not closed.
+     */
+    void addAll(InputStream inputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty() && line.charAt(0) != '#')
+                add(line);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return {@code true} if {@code host} is a trusted domain or a subdomain of one
+     */
+    boolean isTrustedHost(String host) {
+        Node node = root;
+        int end = host.length();
+        while (true) {
+            int dot = host.lastIndexOf('.', end - 1);
+            node = node.get(host, dot + 1, end, hash(host, dot + 1, end));
+            if (node == null)
+                return false;
+            if (node.domain != null)
+                return true;
+            if (dot < 0)
+                return false;
+            end = dot;
+        }
+    }
+
+    /**
+     * Finds a trusted domain occurring anywhere in {@code text}, the way {@code text.contains()}
+     * would for each entry. Such an occurrence spans dot-separated segments of {@code text}: its
+     * last label is a prefix of one segment, its inner labels are whole segments and its first
+     * label is a suffix of a segment. Only those candidates are probed.
+     *
+     * @return the trusted domain, or {@code null} if none occurs in {@code text}
+     */
+    String findContained(String text) {
+        int length = text.length();
+        int start = 0;
+        while (start <= length) {
+            int end = text.indexOf('.', start);
+            if (end < 0)
+                end = length;
+            // the last label needs a segment before it for the rest of the domain
+            if (start > 0) {
+                int hash = 0;
+                for (int i = start; i < end; i++) {
+                    hash = 31 * hash + text.charAt(i);
+                    Node node = root.get(text, start, i + 1, hash);
+                    if (node != null) {
+                        String domain = findContained(node, text, start - 1);
+                        if (domain != null)
+                            return domain;
+                    }
+                }
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Finds a trusted domain that {@code host}, or a parent domain of it, is visually confusable
+     * with: "login.montinоde.com" with a Cyrillic 'о' imitates "montinode.com".
+     *
+     * @return the imitated trusted domain, or {@code null} if there is none or {@code host} is
+     *         itself trusted
+     */
+    String findHomograph(String host) {
+        if (isTrustedHost(host.toLowerCase(Locale.ROOT)))
+            return null;
+        String skeleton = ConfusableSkeleton.skeleton(host);
+        int start = 0;
+        while (true) {
+            String domain = skeletons.get(start == 0 ? skeleton : skeleton.substring(start));
+            if (domain != null)
+                return domain;
+            int dot = skeleton.indexOf('.', start);
+            if (dot < 0)
+                return null;
+            start = dot + 1;
+        }
+    }
+
+    /**
+     * Finds a trusted domain that {@code host}, or a parent domain of it, imitates:
+     * "login.montniode.com" imitates "montinode.com". Call it for hosts that are not trusted,
+     * otherwise trusted domains close to each other would be reported.
+     *
+     * @param maxDistance At most {@link #MAX_LOOKALIKE_DISTANCE}
+     * @return the trusted domain within {@code maxDistance} edits of the longest such
+     *         candidate, or {@code null} if there is none
+     */
+    String findLookalike(String host, int maxDistance) {
+        int start = 0;
+        int dot;
+        while ((dot = host.indexOf('.', start)) >= 0) {
+            String lookalike = lookalikes.findNearest(start == 0 ? host : host.substring(start), maxDistance);
+            if (lookalike != null)
+                return lookalike;
+            start = dot + 1;
+        }
+        return null;
+    }
+
+    // Matches the labels before the segment ending at the dot at {@code end}, right to left
+    private static String findContained(Node node, String text, int end) {
+        int start = text.lastIndexOf('.', end - 1) + 1;
+        int hash = 0;
+        int power = 1;
+        for (int i = end - 1; i >= start; i--) {
+            hash += text.charAt(i) * power;
+            power *= 31;
+            Node child = node.get(text, i, end, hash);
+            if (child == null)
+                continue;
+            if (child.domain != null)
+                return child.domain;
+            // the whole segment matched an inner label, so continue with the segment before
+            if (i == start && start > 0) {
+                String domain = findContained(child, text, start - 1);
+                if (domain != null)
+                    return domain;
+            }
+        }
+        return null;
+    }
+
+    // Same value as text.substring(start, end).hashCode()
+    private static int hash(String text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + text.charAt(i);
+        return hash;
+    }
+}
@@ -0,0 +1,59 @@
+package com.dynamixsoftware.printingsample;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * UriGrantCache - Memoizes the content URIs handed to other apps and the read permissions granted
+ * on them.
+ *
+ * A URI grant lasts until it is revoked or the device reboots, so granting the same URI to the
+ * same package again is a wasted call into the activity manager. Entries are keyed by asset and
+ * target package; assets only change with the APK, so an entry stays valid until the target
+ * package is reinstalled, updated or removed, which drops the grants made to it. The
+ * {@link PrintHandResolver} reports those changes through {@link #onPackageChanged(String)}.
+ */
+class UriGrantCache {
+
+    private final Context context;
+
+    // guarded by this
+    private final Map<String, Uri> entries = new HashMap<>();
+
+    UriGrantCache(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * @return {@link SampleDocumentsProvider} URI of the asset, readable by {@code packageName}
+     */
+    synchronized Uri getAssetUri(String filename, String packageName) {
+        String key = packageName + '|' + filename;
+        Uri uri = entries.get(key);
+        if (uri == null) {
+            uri = grant(SampleDocumentsProvider.getAssetUri(filename), packageName);
+            entries.put(key, uri);
+        }
+        return uri;
+    }
+
+    /**
+     * Forgets the grants made to {@code packageName}, so they are made again on the next request.
+     */
+    synchronized void onPackageChanged(String packageName) {
+        String prefix = packageName + '|';
+        for (Iterator<String> keys = entries.keySet().iterator(); keys.hasNext(); )
+            if (keys.next().startsWith(prefix))
+                keys.remove();
+    }
+
+    private Uri grant(Uri uri, String packageName) {
+        context.grantUriPermission(packageName, uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        return uri;
+    }
+}
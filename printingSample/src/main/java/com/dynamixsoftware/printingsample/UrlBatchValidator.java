@@ -0,0 +1,144 @@
+package com.dynamixsoftware.printingsample;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * UrlBatchValidator - Validates lists of URLs on a pool of threads and hands the results back in
+ * input order as soon as they are ready.
+ *
+ * Each URL is judged by its host, lowercased; scheme, path and query are ignored. URLs with the
+ * same host share one check. The caller's thread submits the checks and delivers the results, so
+ * a result is passed on once it and every result before it are done.
+ *
+ * With a window, at most that many URLs are pending at once and only the hosts of the last
+ * window URLs are remembered, so memory stays bounded however long the input is. Hosts repeated
+ * further apart are then checked again, usually from the verdict cache.
+ */
+class UrlBatchValidator {
+
+    private static final String TAG = "UrlBatchValidator";
+
+    interface Callback {
+        /**
+         * Called on the validating thread, in input order.
+         *
+         * @param index Position of {@code url} in the input
+         */
+        void onValidated(int index, String url, AntiSpoofingValidator.ValidationResult result);
+    }
+
+    private static final class Pending {
+        final int index;
+        final String url;
+        final String host;
+        final Future<AntiSpoofingValidator.ValidationResult> future;
+
+        Pending(int index, String url, String host, Future<AntiSpoofingValidator.ValidationResult> future) {
+            this.index = index;
+            this.url = url;
+            this.host = host;
+            this.future = future;
+        }
+    }
+
+    private final ExecutorService executor;
+
+    /**
+     * @param threadCount Checks run at once
+     */
+    UrlBatchValidator(int threadCount) {
+        executor = Executors.newFixedThreadPool(threadCount);
+    }
+
+    /**
+     * Validates every URL of {@code urls}, blocking until the last result was delivered; call it
+     * off the main thread.
+     *
+     * @param window Most URLs pending at once, or {@link Integer#MAX_VALUE} for no bound
+     * @throws InterruptedException if interrupted while waiting; pending checks are cancelled
+     */
+    void validate(Iterator<String> urls, final int window, Callback callback) throws InterruptedException {
+        if (window < 1)
+            throw new IllegalArgumentException("Window must be positive: " + window);
+        Map<String, Future<AntiSpoofingValidator.ValidationResult>> checks =
+            new LinkedHashMap<String, Future<AntiSpoofingValidator.ValidationResult>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Future<AntiSpoofingValidator.ValidationResult>> eldest) {
+                    return size() > window;
+                }
+            };
+        Queue<Pending> pending = new ArrayDeque<>();
+        boolean completed = false;
+        try {
+            int index = 0;
+            while (urls.hasNext()) {
+                String url = urls.next();
+                String host = normalize(url);
+                Future<AntiSpoofingValidator.ValidationResult> future = checks.get(host);
+                if (future == null) {
+                    future = executor.submit(new Check(host));
+                    checks.put(host, future);
+                }
+                pending.add(new Pending(index++, url, host, future));
+                // pass on what is ready, and wait for the oldest URL once the window is full
+                while (!pending.isEmpty() && (pending.size() >= window || pending.peek().future.isDone()))
+                    deliver(pending.poll(), callback);
+            }
+            while (!pending.isEmpty())
+                deliver(pending.poll(), callback);
+            completed = true;
+        } finally {
+            if (!completed)
+                for (Pending unfinished : pending)
+                    unfinished.future.cancel(true);
+        }
+    }
+
+    private static void deliver(Pending pending, Callback callback) throws InterruptedException {
+        AntiSpoofingValidator.ValidationResult result;
+        try {
+            result = pending.future.get();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Could not check " + pending.host, e.getCause());
+            result = new AntiSpoofingValidator.ValidationResult(false,
+                "URL validation error: " + e.getCause().getMessage(), AntiSpoofingValidator.SpoofingType.ALL);
+        }
+        callback.onValidated(pending.index, pending.url, result);
+    }
+
+    // Host with its ASCII letters lowercased, or the URL itself if it has none, which then fails validation as before
+    static String normalize(String url) {
+        if (url == null)
+            return "";
+        try {
+            return AntiSpoofingValidator.toLowerCaseAscii(AntiSpoofingValidator.extractHost(url));
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    private static final class Check implements Callable<AntiSpoofingValidator.ValidationResult> {
+
+        final String host;
+
+        Check(String host) {
+            this.host = host;
+        }
+
+        @Override
+        public AntiSpoofingValidator.ValidationResult call() {
+            return AntiSpoofingValidator.validateUrl(host);
+        }
+    }
+}
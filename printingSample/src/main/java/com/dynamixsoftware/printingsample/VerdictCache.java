@@ -0,0 +1,162 @@
+package com.dynamixsoftware.printingsample;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * VerdictCache - Size-bounded, expiring cache of validation verdicts shared by all threads.
+ *
+ * Keys are spread over a few segments, each a least-recently-used map behind its own lock, so
+ * threads validating different domains rarely wait for each other. Every entry expires after the
+ * TTL it was stored with.
+ *
+ * Verdicts depend on rule sets that can be reloaded. {@link #invalidate()} starts a new
+ * generation: entries of older generations are dropped, and a verdict computed under an older
+ * generation is not stored. Callers read {@link #getGeneration()} before computing a verdict and
+ * pass it to {@link #put}.
+ */
+class VerdictCache<V> {
+
+    private static final String TAG = "VerdictCache";
+
+    private static final int SEGMENT_COUNT = 8;
+
+    private static final class Cached<V> {
+        final V value;
+        final long expiresAt;
+        final int generation;
+
+        Cached(V value, long expiresAt, int generation) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.generation = generation;
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<String, Cached<V>> {
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached<V>> eldest) {
+            if (size() <= capacity)
+                return false;
+            evictions.incrementAndGet();
+            return true;
+        }
+    }
+
+    private final List<Segment> segments = new ArrayList<>();
+    private final AtomicInteger generation = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param capacity Most verdicts kept
+     */
+    VerdictCache(int capacity) {
+        for (int i = 0; i < SEGMENT_COUNT; i++)
+            segments.add(new Segment(Math.max(1, capacity / SEGMENT_COUNT)));
+    }
+
+    /**
+     * @return the cached verdict, or {@code null} if there is none, it expired or its rules
+     *         were reloaded since
+     */
+    V get(String key) {
+        Segment segment = getSegment(key);
+        synchronized (segment) {
+            Cached<V> entry = segment.get(key);
+            if (entry != null && entry.generation == generation.get()) {
+                if (entry.expiresAt > SystemClock.elapsedRealtime()) {
+                    hits.incrementAndGet();
+                    return entry.value;
+                }
+                expirations.incrementAndGet();
+            }
+            if (entry != null)
+                segment.remove(key);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    int getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Stores {@code value} for {@code ttlMillis}, unless the rules were reloaded since
+     * {@code generation} was read.
+     */
+    void put(String key, V value, long ttlMillis, int generation) {
+        Segment segment = getSegment(key);
+        synchronized (segment) {
+            if (generation == this.generation.get())
+                segment.put(key, new Cached<>(value, SystemClock.elapsedRealtime() + ttlMillis, generation));
+        }
+    }
+
+    /**
+     * Drops every verdict; call after the rules they were computed with changed.
+     */
+    void invalidate() {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        for (Segment segment : segments)
+            synchronized (segment) {
+                segment.clear();
+            }
+    }
+
+    /**
+     * @return size and hit counters, e.g. {"size":120,"hits":9800,"misses":200,"hitRate":0.98,
+     * "expirations":3,"evictions":0,"invalidations":1,"generation":1}
+     */
+    JSONObject snapshot() {
+        int size = 0;
+        for (Segment segment : segments)
+            synchronized (segment) {
+                size += segment.size();
+            }
+        long hits = this.hits.get();
+        long misses = this.misses.get();
+        JSONObject snapshot = new JSONObject();
+        try {
+            snapshot.put("size", size);
+            snapshot.put("hits", hits);
+            snapshot.put("misses", misses);
+            snapshot.put("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0);
+            snapshot.put("expirations", expirations.get());
+            snapshot.put("evictions", evictions.get());
+            snapshot.put("invalidations", invalidations.get());
+            snapshot.put("generation", generation.get());
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not build snapshot", e);
+        }
+        return snapshot;
+    }
+
+    private Segment getSegment(String key) {
+        int hash = key.hashCode();
+        return segments.get((hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1));
+    }
+}
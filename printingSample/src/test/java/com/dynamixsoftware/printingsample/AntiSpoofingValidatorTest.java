@@ -0,0 +1,148 @@
+package com.dynamixsoftware.printingsample;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the hand-written host scans against the regexes they replaced, on random strings built
+ * from the characters those regexes care about, and how hosts are lowercased before they are
+ * checked.
+ */
+public class AntiSpoofingValidatorTest {
+
+    private static final int RUNS = 50000;
+
+    private static final String[] PREFIXES = {"", "", "http://", "https://", "http:/", "ftp://", "HTTP://"};
+    private static final char[] ALPHABET = {
+            'a', 'b', 'x', 'n', 'Z', '0', '1', '9', '.', '.', '.', '-', '-', '/', ':', '_', ' ',
+            '\n', '\r', '\u0085', '\u2028', '\u2029',
+            '\u036f', '\u0370', '\u03bf', '\u03ff', '\u0400', '\u043e', '\u04ff', '\u0500',
+            '\u05ff', '\u0600', '\u06ff', '\u0700', '\u00e9', '\u212a'};
+
+    // The host checks as they were before they were hand-written
+    private static final Pattern LEGACY_SUSPICIOUS_DOMAIN_PATTERN = Pattern.compile(
+            ".*\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}.*|" +
+            ".*xn--.*|" +
+            ".*[-]{2,}.*|" +
+            ".*[\\p{InCyrillic}\\p{InGreek}\\p{InArabic}].*");
+
+    static String legacyExtractHost(String url) {
+        return url.replaceAll("^https?://", "").split("/")[0];
+    }
+
+    static boolean legacyHasSuspiciousPattern(String host) {
+        return LEGACY_SUSPICIOUS_DOMAIN_PATTERN.matcher(host).matches();
+    }
+
+    static boolean legacyIsValidDomainFormat(String host) {
+        return host.matches("^([a-zA-Z0-9]([a-zA-Z0-9\\-]{0,61}[a-zA-Z0-9])?\\.)+[a-zA-Z]{2,}$");
+    }
+
+    @Test
+    public void extractHostMatchesLegacyRegex() {
+        Random random = new Random(42);
+        for (int run = 0; run < RUNS; run++) {
+            String url = PREFIXES[random.nextInt(PREFIXES.length)] + randomText(random, 12);
+            String expected;
+            try {
+                expected = legacyExtractHost(url);
+            } catch (ArrayIndexOutOfBoundsException e) {
+                // split() left no element: only slashes after the scheme
+                expected = null;
+            }
+            String actual;
+            try {
+                actual = AntiSpoofingValidator.extractHost(url);
+            } catch (IllegalArgumentException e) {
+                actual = null;
+            }
+            assertEquals(url, expected, actual);
+        }
+    }
+
+    @Test
+    public void hasSuspiciousPatternMatchesLegacyRegex() {
+        Random random = new Random(43);
+        for (int run = 0; run < RUNS; run++) {
+            String host = random.nextBoolean() ? randomText(random, 16) : randomDottedDigits(random);
+            assertEquals(host, legacyHasSuspiciousPattern(host), AntiSpoofingValidator.hasSuspiciousPattern(host));
+        }
+    }
+
+    @Test
+    public void isValidDomainFormatMatchesLegacyRegex() {
+        Random random = new Random(44);
+        for (int run = 0; run < RUNS; run++) {
+            String host = random.nextBoolean() ? randomText(random, 16) : randomLabels(random);
+            assertEquals(host, legacyIsValidDomainFormat(host), AntiSpoofingValidator.isValidDomainFormat(host));
+        }
+        // label length limit
+        String label = new String(new char[63]).replace('\0', 'a');
+        for (String host : new String[]{label + ".com", label + "a.com", "a-" + label + ".com", "a.b.c", "a.bc", ".com", "a..com"})
+            assertEquals(host, legacyIsValidDomainFormat(host), AntiSpoofingValidator.isValidDomainFormat(host));
+    }
+
+    @Test
+    public void lookalikesOfAsciiLettersAreNotLowercasedIntoThem() {
+        // KELVIN SIGN, which toLowerCase() turns into an ASCII 'k'
+        String kelvin = "\u212Aevil.com";
+        assertEquals(kelvin, AntiSpoofingValidator.toLowerCaseAscii(kelvin));
+        assertEquals(kelvin, UrlBatchValidator.normalize("https://" + kelvin + "/login"));
+        assertTrue(AntiSpoofingValidator.validateDNSSpoofing("kevil.com").isValid());
+
+        AntiSpoofingValidator.ValidationResult result = AntiSpoofingValidator.validateDNSSpoofing("https://" + kelvin + "/login");
+        assertFalse(result.isValid());
+        assertTrue(result.getMessage(), result.getMessage().contains("Invalid domain format"));
+    }
+
+    @Test
+    public void asciiLettersAreLowercased() {
+        assertEquals("api.montinode.com", AntiSpoofingValidator.toLowerCaseAscii("API.MontiNode.com"));
+        assertEquals("montin\u041ede.com", AntiSpoofingValidator.toLowerCaseAscii("MONTIN\u041eDE.com"));
+        assertEquals("api.montinode.com", UrlBatchValidator.normalize("https://API.MontiNode.com/x"));
+    }
+
+    private static String randomText(Random random, int maxLength) {
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            text.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+        return text.toString();
+    }
+
+    // Digit groups around dots, where dotted quads and their near misses are likely
+    private static String randomDottedDigits(Random random) {
+        int groups = 1 + random.nextInt(6);
+        StringBuilder text = new StringBuilder();
+        for (int group = 0; group < groups; group++) {
+            if (group > 0)
+                text.append(random.nextInt(8) == 0 ? "-" : ".");
+            int digits = random.nextInt(5);
+            for (int i = 0; i < digits; i++)
+                text.append((char) ('0' + random.nextInt(10)));
+            if (random.nextInt(6) == 0)
+                text.append('a');
+        }
+        return text.toString();
+    }
+
+    // Domain-like labels, where the label and top-level domain rules decide
+    private static String randomLabels(Random random) {
+        int labels = 1 + random.nextInt(4);
+        StringBuilder text = new StringBuilder();
+        for (int label = 0; label < labels; label++) {
+            if (label > 0)
+                text.append('.');
+            int length = random.nextInt(5);
+            for (int i = 0; i < length; i++)
+                text.append("ab9-Z".charAt(random.nextInt(5)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,207 @@
+package com.dynamixsoftware.printingsample;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class DnsConsistencyCheckerTest {
+
+    private static final String HOST = "api.montinode.com";
+    private static final long TTL_MILLIS = 1000;
+    private static final long WAIT_SECONDS = 10;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final FakeClock clock = new FakeClock();
+    private DnsConsistencyChecker.StaticResolver table;
+    private CountingResolver resolver;
+    private DnsConsistencyChecker checker;
+
+    private static class FakeClock implements DnsConsistencyChecker.Clock {
+        volatile long now;
+
+        @Override
+        public long elapsedRealtime() {
+            return now;
+        }
+    }
+
+    /** Counts lookups; the first one waits for {@link #release()} when gated. */
+    private class CountingResolver implements DnsConsistencyChecker.Resolver {
+        final AtomicInteger lookups = new AtomicInteger();
+        final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch gate = new CountDownLatch(1);
+        volatile boolean gated;
+        // pins the host anew inside every lookup, as a caller racing each one would
+        volatile boolean repinEveryLookup;
+
+        @Override
+        public DnsConsistencyChecker.Answer resolve(String host) throws UnknownHostException {
+            int lookup = lookups.incrementAndGet();
+            if (repinEveryLookup)
+                checker.pin(host, "203.0.113." + lookup);
+            entered.countDown();
+            if (gated && lookup == 1) {
+                try {
+                    gate.await(WAIT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return table.resolve(host);
+        }
+
+        void release() {
+            gate.countDown();
+        }
+    }
+
+    /** Records the results it is called back with. */
+    private static class RecordingCallback implements DnsConsistencyChecker.Callback {
+        final List<AntiSpoofingValidator.ValidationResult> results = new ArrayList<>();
+        final CountDownLatch called = new CountDownLatch(1);
+
+        @Override
+        public synchronized void onChecked(AntiSpoofingValidator.ValidationResult result) {
+            results.add(result);
+            called.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() throws UnknownHostException {
+        table = new DnsConsistencyChecker.StaticResolver().put(HOST, TTL_MILLIS, "203.0.113.10");
+        resolver = new CountingResolver();
+        checker = new DnsConsistencyChecker(resolver, clock, DIRECT);
+    }
+
+    @After
+    public void tearDown() {
+        resolver.release();
+    }
+
+    @Test
+    public void concurrentChecksShareOneLookup() throws Exception {
+        resolver.gated = true;
+        Future<AntiSpoofingValidator.ValidationResult> first = checker.check(HOST, null);
+        Future<AntiSpoofingValidator.ValidationResult> second = checker.check(HOST, null);
+        resolver.release();
+
+        assertNotSame(first, second);
+        assertTrue(first.get(WAIT_SECONDS, TimeUnit.SECONDS).isValid());
+        assertTrue(second.get(WAIT_SECONDS, TimeUnit.SECONDS).isValid());
+        assertEquals(1, resolver.lookups.get());
+    }
+
+    @Test
+    public void verdictIsCachedForTheTtlOfTheAnswer() throws Exception {
+        assertTrue(checker.check(HOST, null).get(WAIT_SECONDS, TimeUnit.SECONDS).isValid());
+        clock.now = TTL_MILLIS - 1;
+        assertTrue(checker.check(HOST, null).get(WAIT_SECONDS, TimeUnit.SECONDS).isValid());
+        assertEquals(1, resolver.lookups.get());
+
+        clock.now = TTL_MILLIS;
+        assertTrue(checker.check(HOST, null).get(WAIT_SECONDS, TimeUnit.SECONDS).isValid());
+        assertEquals(2, resolver.lookups.get());
+    }
+
+    @Test
+    public void longTtlIsCappedAtTenMinutes() throws Exception {
+        table.put(HOST, 24 * 60 * 60 * 1000, "203.0.113.10");
+        checker.check(HOST, null).get(WAIT_SECONDS, TimeUnit.SECONDS);
+        clock.now = 10 * 60 * 1000;
+        checker.check(HOST, null).get(WAIT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(2, resolver.lookups.get());
+    }
+
+    @Test
+    public void pinningDuringLookupRepeatsIt() throws Exception {
+        checker.pin(HOST, "203.0.113.99");
+        resolver.gated = true;
+        Future<AntiSpoofingValidator.ValidationResult> result = checker.check(HOST, null);
+        assertTrue(resolver.entered.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        checker.pin(HOST, "203.0.113.10");
+        resolver.release();
+
+        assertTrue(result.get(WAIT_SECONDS, TimeUnit.SECONDS).isValid());
+        assertEquals(2, resolver.lookups.get());
+        // the repeated lookup saw the current pins, so its verdict was cached
+        assertTrue(checker.check(HOST, null).get(WAIT_SECONDS, TimeUnit.SECONDS).isValid());
+        assertEquals(2, resolver.lookups.get());
+    }
+
+    @Test
+    public void verdictOfStalePinsIsNotCached() throws Exception {
+        resolver.repinEveryLookup = true;
+        checker.check(HOST, null).get(WAIT_SECONDS, TimeUnit.SECONDS);
+        int lookups = resolver.lookups.get();
+        assertTrue(lookups > 1);
+
+        resolver.repinEveryLookup = false;
+        checker.check(HOST, null).get(WAIT_SECONDS, TimeUnit.SECONDS);
+        assertTrue(resolver.lookups.get() > lookups);
+    }
+
+    @Test
+    public void cancellingOneCallerLeavesTheOthersWaiting() throws Exception {
+        resolver.gated = true;
+        RecordingCallback cancelled = new RecordingCallback();
+        RecordingCallback waiting = new RecordingCallback();
+        Future<AntiSpoofingValidator.ValidationResult> first = checker.check(HOST, cancelled);
+        Future<AntiSpoofingValidator.ValidationResult> second = checker.check(HOST, waiting);
+        assertTrue(first.cancel(true));
+        resolver.release();
+
+        assertTrue(second.get(WAIT_SECONDS, TimeUnit.SECONDS).isValid());
+        assertTrue(waiting.called.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, waiting.results.size());
+        assertTrue(first.isCancelled());
+        assertTrue(cancelled.results.isEmpty());
+    }
+
+    @Test
+    public void pinsMatchAnySpellingOfAnAddress() throws Exception {
+        table.put(HOST, TTL_MILLIS, "2001:db8::1");
+        checker.pin(HOST, "2001:DB8:0:0::1");
+        assertTrue(checker.check(HOST, null).get(WAIT_SECONDS, TimeUnit.SECONDS).isValid());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pinMustBeALiteral() {
+        checker.pin(HOST, "example.com");
+    }
+
+    @Test
+    public void unpinnedHostMustNotResolveToNonPublicAddresses() throws Exception {
+        String[] nonPublic = {"127.0.0.1", "10.1.2.3", "192.168.1.1", "169.254.0.1", "100.64.0.1",
+                "100.127.255.255", "::1", "fe80::1", "fc00::1", "fd12:3456::1"};
+        for (String address : nonPublic) {
+            checker.setResolver(table.put(HOST, TTL_MILLIS, address));
+            assertFalse(address, checker.check(HOST, null).get(WAIT_SECONDS, TimeUnit.SECONDS).isValid());
+        }
+        String[] publicAddresses = {"203.0.113.10", "100.128.0.1", "100.63.255.255", "2001:db8::1"};
+        for (String address : publicAddresses) {
+            checker.setResolver(table.put(HOST, TTL_MILLIS, address));
+            assertTrue(address, checker.check(HOST, null).get(WAIT_SECONDS, TimeUnit.SECONDS).isValid());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.dynamixsoftware.printingsample;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the automaton against the contains() loop it replaced, on random pattern lists and
+ * names over a small alphabet with mixed case and the dotted capital I.
+ */
+public class DriverPatternMatcherTest {
+
+    // Final capital sigma is left out: the matcher documents that it lowercases it on its own
+    private static final String ALPHABET = "abcABC_i\u0130\u0307I";
+
+    static String legacyFindFirst(List<String> patterns, String name) {
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        for (String pattern : patterns)
+            if (lowerName.contains(pattern))
+                return pattern;
+        return null;
+    }
+
+    @Test
+    public void findFirstMatchesContainsLoop() {
+        Random random = new Random(49);
+        for (int list = 0; list < 500; list++) {
+            List<String> patterns = new ArrayList<>();
+            int size = 1 + random.nextInt(8);
+            for (int i = 0; i < size; i++)
+                patterns.add(randomText(random, 1 + random.nextInt(4)).toLowerCase(Locale.ROOT));
+            DriverPatternMatcher matcher = new DriverPatternMatcher(patterns);
+            for (int query = 0; query < 500; query++) {
+                String name = randomText(random, random.nextInt(16));
+                assertEquals(patterns + " in " + name, legacyFindFirst(patterns, name), matcher.findFirst(name));
+            }
+        }
+    }
+
+    @Test
+    public void builtInPatternsAreFoundIgnoringCase() {
+        List<String> patterns = Arrays.asList("wdm_spoof", "fake_driver", "malicious", "backdoor", "rootkit");
+        DriverPatternMatcher matcher = new DriverPatternMatcher(patterns);
+        assertEquals("malicious", matcher.findFirst("HP MALICIOUS Driver"));
+        assertEquals("backdoor", matcher.findFirst("x-BackDoor-rootkit"));
+        assertNull(matcher.findFirst("HP LaserJet 1020"));
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        return text.toString();
+    }
+}
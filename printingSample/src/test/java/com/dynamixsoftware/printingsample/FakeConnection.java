@@ -0,0 +1,133 @@
+package com.dynamixsoftware.printingsample;
+
+import com.dynamixsoftware.printingsdk.PrintingSdk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * FakeConnection - Stands in for PrintHand in the {@link SdkSupervisor} tests: a bound service
+ * that can be killed on demand, and whose binds can be made slow, refused or left hanging.
+ *
+ * Each {@link #reconnect(SdkConnection.Service, Runnable)} drops a bind still pending, like
+ * unbinding a real service does, and is recorded with the time it was made. Binds complete on the
+ * {@link FakeScheduler} of the test, in virtual time.
+ */
+class FakeConnection implements SdkSupervisor.Connection {
+
+    private final SdkConnection.Service service;
+    private final List<SdkConnection.Listener> listeners = new CopyOnWriteArrayList<>();
+    private final FakeScheduler scheduler;
+
+    // guarded by this
+    private final List<Long> reconnectTimes = new ArrayList<>();
+    private boolean ready;
+    private int generation;
+    private int refusedBinds;
+    private boolean hangBinds;
+    private long bindDelayMs;
+
+    FakeConnection(SdkConnection.Service service, FakeScheduler scheduler) {
+        this.service = service;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Connects the service, as the first bind at application start does.
+     */
+    void start() {
+        connected(generation());
+    }
+
+    /**
+     * Kills the service: calls to it fail until it is bound again.
+     */
+    void kill() {
+        synchronized (this) {
+            ready = false;
+        }
+        for (SdkConnection.Listener listener : listeners)
+            listener.onDisconnected(service);
+    }
+
+    /**
+     * Makes the next {@code count} binds fail immediately.
+     */
+    synchronized void refuseBinds(int count) {
+        refusedBinds = count;
+    }
+
+    synchronized void hangBinds(boolean hang) {
+        hangBinds = hang;
+    }
+
+    synchronized void setBindDelay(long delayMs) {
+        bindDelayMs = delayMs;
+    }
+
+    /**
+     * @return virtual times of the reconnects requested so far, in milliseconds
+     */
+    synchronized List<Long> getReconnectTimes() {
+        return new ArrayList<>(reconnectTimes);
+    }
+
+    @Override
+    public void addListener(SdkConnection.Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public synchronized boolean isReady(SdkConnection.Service service) {
+        return service == this.service && ready;
+    }
+
+    @Override
+    public void reconnect(SdkConnection.Service service, Runnable onFailed) {
+        final int bind;
+        long delay;
+        boolean refused;
+        synchronized (this) {
+            reconnectTimes.add(scheduler.now());
+            ready = false;
+            bind = ++generation;
+            refused = refusedBinds > 0;
+            if (refused)
+                refusedBinds--;
+            else if (hangBinds)
+                return;
+            delay = bindDelayMs;
+        }
+        if (refused) {
+            onFailed.run();
+            return;
+        }
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                connected(bind);
+            }
+        }, delay);
+    }
+
+    @Override
+    public PrintingSdk getPrintingSdk() {
+        return null;
+    }
+
+    private synchronized int generation() {
+        return generation;
+    }
+
+    private void connected(int bind) {
+        synchronized (this) {
+            // a later reconnect dropped this bind
+            if (bind != generation)
+                return;
+            ready = true;
+        }
+        for (SdkConnection.Listener listener : listeners)
+            listener.onConnected(service);
+    }
+}
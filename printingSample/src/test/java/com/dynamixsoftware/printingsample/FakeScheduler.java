@@ -0,0 +1,97 @@
+package com.dynamixsoftware.printingsample;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * FakeScheduler - Runs the {@link SdkSupervisor} tasks on the test thread in virtual time, so the
+ * tests check backoff delays and bind timeouts exactly and never sleep.
+ *
+ * Tasks run only when the test advances the time, in the order they are due; tasks due at the
+ * same time run in the order they were scheduled.
+ */
+class FakeScheduler implements SdkSupervisor.Scheduler {
+
+    private static final class Task {
+        final long at;
+        final long sequence;
+        final Runnable runnable;
+
+        Task(long at, long sequence, Runnable runnable) {
+            this.at = at;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+    }
+
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>(11, new Comparator<Task>() {
+        @Override
+        public int compare(Task a, Task b) {
+            if (a.at != b.at)
+                return a.at < b.at ? -1 : 1;
+            return a.sequence < b.sequence ? -1 : a.sequence > b.sequence ? 1 : 0;
+        }
+    });
+
+    // guarded by this
+    private long now;
+    private long sequence;
+    private boolean shutdown;
+
+    @Override
+    public synchronized long now() {
+        return now;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        schedule(task, 0);
+    }
+
+    @Override
+    public synchronized void schedule(Runnable task, long delayMs) {
+        if (shutdown)
+            throw new RejectedExecutionException();
+        tasks.add(new Task(now + delayMs, sequence++, task));
+    }
+
+    /**
+     * Moves the time forward by {@code delayMs}, running every task due meanwhile, including the
+     * ones they schedule.
+     */
+    void advance(long delayMs) {
+        long until;
+        synchronized (this) {
+            until = now + delayMs;
+        }
+        while (true) {
+            Task task;
+            synchronized (this) {
+                task = tasks.peek();
+                if (task == null || task.at > until) {
+                    now = until;
+                    return;
+                }
+                tasks.poll();
+                now = task.at;
+            }
+            task.runnable.run();
+        }
+    }
+
+    /**
+     * Runs the tasks due now, including the ones they schedule for now.
+     */
+    void runDue() {
+        advance(0);
+    }
+
+    /**
+     * Drops the pending tasks and rejects new ones.
+     */
+    synchronized void shutdown() {
+        shutdown = true;
+        tasks.clear();
+    }
+}
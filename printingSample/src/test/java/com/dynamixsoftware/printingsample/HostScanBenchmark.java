@@ -0,0 +1,68 @@
+package com.dynamixsoftware.printingsample;
+
+import java.util.Locale;
+
+/**
+ * HostScanBenchmark - Times the host normalization and validation done by validateDNSSpoofing
+ * against the regex-based implementation it replaced. Not a test: run its main() by hand, e.g.
+ * from the IDE, with the number of passes over the URL set as the argument (default 100000).
+ * Equivalence of the two is checked by {@link AntiSpoofingValidatorTest}.
+ */
+class HostScanBenchmark {
+
+    private static final String[] URLS = {
+            "https://montinode.com/api/data",
+            "http://api.printhand.com/v1/printers?model=hp",
+            "dynamixsoftware.com",
+            "192.168.1.1.malicious.com",
+            "https://xn--example.com/",
+            "http://bad--domain.com/index.html",
+            "https://montin\u043ede.com/login", // Cyrillic o
+            "https://-invalid-.com",
+            "http://localhost:8080/status",
+            "https://a.very.long.subdomain.chain.of.labels.example.org/path/to/resource"
+    };
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        // Warm up both paths before measuring
+        runLegacy(iterations / 10 + 1);
+        runHandWritten(iterations / 10 + 1);
+
+        long start = System.nanoTime();
+        int legacyValid = runLegacy(iterations);
+        long legacyNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int handWrittenValid = runHandWritten(iterations);
+        long handWrittenNanos = System.nanoTime() - start;
+
+        long calls = (long) iterations * URLS.length;
+        System.out.println("Regex: " + legacyNanos / calls + " ns/url, hand-written: " + handWrittenNanos / calls
+                + " ns/url, speedup " + String.format(Locale.ROOT, "%.1fx", (double) legacyNanos / Math.max(1, handWrittenNanos))
+                + " (" + legacyValid + "/" + handWrittenValid + " valid)");
+    }
+
+    private static int runLegacy(int iterations) {
+        int valid = 0;
+        for (int i = 0; i < iterations; i++)
+            for (String url : URLS) {
+                String host = AntiSpoofingValidatorTest.legacyExtractHost(url);
+                if (!AntiSpoofingValidatorTest.legacyHasSuspiciousPattern(host) && AntiSpoofingValidatorTest.legacyIsValidDomainFormat(host))
+                    valid++;
+            }
+        return valid;
+    }
+
+    private static int runHandWritten(int iterations) {
+        int valid = 0;
+        for (int i = 0; i < iterations; i++)
+            for (String url : URLS) {
+                String host = AntiSpoofingValidator.extractHost(url);
+                if (!AntiSpoofingValidator.hasSuspiciousPattern(host) && AntiSpoofingValidator.isValidDomainFormat(host))
+                    valid++;
+            }
+        return valid;
+    }
+}
@@ -0,0 +1,111 @@
+package com.dynamixsoftware.printingsample;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the banded kernel and the piece index against a full Levenshtein matrix and a scan of
+ * every domain, on random domain-like strings over a small alphabet.
+ */
+public class LookalikeDomainIndexTest {
+
+    private static final int MAX_DISTANCE = TrustedDomainIndex.MAX_LOOKALIKE_DISTANCE;
+
+    // The full matrix the banded kernel replaced
+    static int fullDistance(String s1, String s2) {
+        int[][] dp = new int[s1.length() + 1][s2.length() + 1];
+        for (int i = 0; i <= s1.length(); i++)
+            dp[i][0] = i;
+        for (int j = 0; j <= s2.length(); j++)
+            dp[0][j] = j;
+        for (int i = 1; i <= s1.length(); i++)
+            for (int j = 1; j <= s2.length(); j++)
+                if (s1.charAt(i - 1) == s2.charAt(j - 1))
+                    dp[i][j] = dp[i - 1][j - 1];
+                else
+                    dp[i][j] = 1 + Math.min(dp[i - 1][j - 1], Math.min(dp[i - 1][j], dp[i][j - 1]));
+        return dp[s1.length()][s2.length()];
+    }
+
+    @Test
+    public void distanceMatchesFullMatrix() {
+        Random random = new Random(47);
+        for (int run = 0; run < 200000; run++) {
+            String a = randomDomain(random);
+            String b = random.nextBoolean() ? randomDomain(random) : mutate(random, a, 1 + random.nextInt(4));
+            int max = random.nextInt(4);
+            int expected = Math.min(fullDistance(a, b), max + 1);
+            assertEquals(a + " / " + b + " within " + max, expected, LookalikeDomainIndex.distance(a, b, max));
+        }
+    }
+
+    @Test
+    public void findAllMatchesBruteForce() {
+        Random random = new Random(48);
+        for (int list = 0; list < 300; list++) {
+            Set<String> domains = new LinkedHashSet<>();
+            int size = 1 + random.nextInt(40);
+            while (domains.size() < size)
+                domains.add(randomDomain(random));
+            LookalikeDomainIndex index = new LookalikeDomainIndex(MAX_DISTANCE);
+            for (String domain : domains)
+                index.add(domain);
+            List<String> listed = new ArrayList<>(domains);
+            for (int query = 0; query < 200; query++) {
+                String host = random.nextInt(4) == 0 ? randomDomain(random)
+                        : mutate(random, listed.get(random.nextInt(listed.size())), random.nextInt(MAX_DISTANCE + 2));
+                int k = random.nextInt(MAX_DISTANCE + 1);
+                List<String> expected = new ArrayList<>();
+                for (String domain : domains)
+                    if (fullDistance(domain, host) <= k)
+                        expected.add(domain);
+                List<String> actual = new ArrayList<>();
+                index.findAll(host, k, actual);
+                Collections.sort(expected);
+                Collections.sort(actual);
+                assertEquals(host + " within " + k, expected, actual);
+            }
+        }
+    }
+
+    private static String randomDomain(Random random) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(9);
+        for (int i = 0; i < length; i++)
+            text.append("abcd".charAt(random.nextInt(4)));
+        if (random.nextInt(5) > 0)
+            text.append(random.nextBoolean() ? ".com" : ".co");
+        return text.toString();
+    }
+
+    // Applies up to {@code edits} random insertions, deletions and substitutions
+    private static String mutate(Random random, String text, int edits) {
+        StringBuilder mutated = new StringBuilder(text);
+        for (int edit = 0; edit < edits; edit++) {
+            int at = random.nextInt(mutated.length() + 1);
+            char c = "abcd.".charAt(random.nextInt(5));
+            switch (random.nextInt(3)) {
+                case 0:
+                    mutated.insert(at, c);
+                    break;
+                case 1:
+                    if (at < mutated.length())
+                        mutated.deleteCharAt(at);
+                    break;
+                default:
+                    if (at < mutated.length())
+                        mutated.setCharAt(at, c);
+                    break;
+            }
+        }
+        return mutated.toString();
+    }
+}
@@ -0,0 +1,209 @@
+package com.dynamixsoftware.printingsample;
+
+import android.os.DeadObjectException;
+import android.os.RemoteException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SdkSupervisorTest {
+
+    private static final SdkConnection.Service SERVICE = SdkConnection.Service.INTENT_API;
+    private static final long BACKOFF_BASE_MS = 40;
+    private static final long BIND_TIMEOUT_MS = 1000;
+    // virtual time long enough for any of the tests to recover
+    private static final long RECOVERY_MS = 10 * 1000;
+
+    private FakeScheduler scheduler;
+    private FakeConnection connection;
+    private SdkSupervisor supervisor;
+    private int recoveries;
+
+    /** Job counting its runs; it fails the way a remote call does when the service is dead. */
+    private class CountingJob extends SdkSupervisor.Job {
+        final AtomicInteger runs = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final List<CountingJob> order;
+        final boolean idempotent;
+        volatile boolean killService;
+        volatile RemoteException error;
+
+        CountingJob(List<CountingJob> order, boolean idempotent) {
+            this.order = order;
+            this.idempotent = idempotent;
+        }
+
+        @Override
+        void run() throws RemoteException {
+            runs.incrementAndGet();
+            if (killService) {
+                killService = false;
+                connection.kill();
+            }
+            if (!connection.isReady(SERVICE))
+                throw new DeadObjectException();
+            if (error != null)
+                throw error;
+            synchronized (order) {
+                order.add(this);
+            }
+        }
+
+        @Override
+        boolean isIdempotent() {
+            return idempotent;
+        }
+
+        @Override
+        void onFailed(RemoteException e) {
+            failures.incrementAndGet();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        scheduler = new FakeScheduler();
+        connection = new FakeConnection(SERVICE, scheduler);
+        supervisor = new SdkSupervisor(connection, BACKOFF_BASE_MS, BIND_TIMEOUT_MS, scheduler);
+        supervisor.addListener(new SdkSupervisor.Listener() {
+            @Override
+            public void onRecovered(SdkConnection.Service service, long latencyMs) {
+                recoveries++;
+            }
+        });
+        connection.start();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void backoffIsJitteredAndCapped() {
+        for (int attempt = 0; attempt < 20; attempt++) {
+            long ceiling = Math.min(BACKOFF_BASE_MS << attempt, 60 * 1000);
+            for (int i = 0; i < 50; i++) {
+                long delay = supervisor.backoff(attempt);
+                assertTrue("attempt " + attempt + ": " + delay, delay >= ceiling / 2 && delay <= ceiling);
+            }
+        }
+    }
+
+    @Test
+    public void failedBindsAreRetriedWithBackoff() {
+        connection.refuseBinds(3);
+        long killedAt = scheduler.now();
+        connection.kill();
+        scheduler.advance(RECOVERY_MS);
+        assertEquals(1, recoveries);
+
+        List<Long> times = connection.getReconnectTimes();
+        assertEquals(4, times.size());
+        long previous = killedAt;
+        for (int attempt = 0; attempt < times.size(); attempt++) {
+            long gap = times.get(attempt) - previous;
+            long ceiling = BACKOFF_BASE_MS << attempt;
+            assertTrue("attempt " + attempt + " after " + gap + " ms", gap >= ceiling / 2 && gap <= ceiling);
+            previous = times.get(attempt);
+        }
+        assertEquals(4, supervisor.getStats(SERVICE).attempts);
+    }
+
+    @Test
+    public void slowBindIsNotRestarted() {
+        // far longer than the first backoff, within the bind timeout
+        connection.setBindDelay(BIND_TIMEOUT_MS - BACKOFF_BASE_MS);
+        connection.kill();
+        scheduler.advance(RECOVERY_MS);
+        assertEquals(1, recoveries);
+        assertEquals(1, connection.getReconnectTimes().size());
+    }
+
+    @Test
+    public void hangingBindIsRetriedAfterTimeout() {
+        connection.hangBinds(true);
+        connection.kill();
+        // first backoff, the bind timeout, then the second backoff
+        scheduler.advance(BACKOFF_BASE_MS + BIND_TIMEOUT_MS + BACKOFF_BASE_MS * 2);
+        List<Long> times = connection.getReconnectTimes();
+        assertEquals(2, times.size());
+        assertTrue(times.get(1) - times.get(0) >= BIND_TIMEOUT_MS);
+        assertEquals(0, recoveries);
+
+        connection.hangBinds(false);
+        scheduler.advance(RECOVERY_MS);
+        assertEquals(1, recoveries);
+        assertEquals(3, connection.getReconnectTimes().size());
+    }
+
+    @Test
+    public void jobsParkedWhileDownRunOnceInOrder() {
+        connection.setBindDelay(200);
+        connection.kill();
+        List<CountingJob> order = new ArrayList<>();
+        List<CountingJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            CountingJob job = new CountingJob(order, false);
+            jobs.add(job);
+            supervisor.submit(SERVICE, job);
+        }
+        scheduler.advance(RECOVERY_MS);
+        assertEquals(1, recoveries);
+
+        assertEquals(jobs, order);
+        for (CountingJob job : jobs) {
+            assertEquals(1, job.runs.get());
+            assertEquals(0, job.failures.get());
+        }
+    }
+
+    @Test
+    public void startedPrintIsNotReplayedAfterServiceDeath() {
+        List<CountingJob> order = new ArrayList<>();
+        CountingJob print = new CountingJob(order, false);
+        print.killService = true;
+        supervisor.submit(SERVICE, print);
+        scheduler.advance(RECOVERY_MS);
+        assertEquals(1, recoveries);
+
+        assertEquals(1, print.runs.get());
+        assertEquals(1, print.failures.get());
+        assertEquals(1, connection.getReconnectTimes().size());
+    }
+
+    @Test
+    public void idempotentJobIsReplayedAfterServiceDeath() {
+        List<CountingJob> order = new ArrayList<>();
+        CountingJob job = new CountingJob(order, true);
+        job.killService = true;
+        supervisor.submit(SERVICE, job);
+        scheduler.advance(RECOVERY_MS);
+        assertEquals(1, recoveries);
+
+        assertEquals(2, job.runs.get());
+        assertEquals(0, job.failures.get());
+        assertEquals(1, order.size());
+    }
+
+    @Test
+    public void errorOfLiveServiceFailsJobWithoutReconnect() {
+        List<CountingJob> order = new ArrayList<>();
+        CountingJob job = new CountingJob(order, true);
+        job.error = new RemoteException();
+        supervisor.submit(SERVICE, job);
+        scheduler.runDue();
+
+        assertEquals(1, job.runs.get());
+        assertEquals(1, job.failures.get());
+        assertTrue(connection.getReconnectTimes().isEmpty());
+    }
+}
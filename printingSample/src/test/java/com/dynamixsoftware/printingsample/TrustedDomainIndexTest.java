@@ -0,0 +1,137 @@
+package com.dynamixsoftware.printingsample;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the trie lookups against the loops over the allowlist they replaced, on random
+ * allowlists and hosts over a small alphabet, so hosts often share labels with the allowlist.
+ */
+public class TrustedDomainIndexTest {
+
+    private static final int ALLOWLISTS = 200;
+    private static final int QUERIES = 500;
+
+    static boolean legacyIsTrustedHost(Set<String> trustedDomains, String host) {
+        for (String trustedDomain : trustedDomains)
+            if (host.equals(trustedDomain) || host.endsWith("." + trustedDomain))
+                return true;
+        return false;
+    }
+
+    static boolean legacyContainsTrusted(Set<String> trustedDomains, String text) {
+        for (String trustedDomain : trustedDomains)
+            if (text.contains(trustedDomain))
+                return true;
+        return false;
+    }
+
+    @Test
+    public void isTrustedHostMatchesLegacyLoop() {
+        Random random = new Random(45);
+        for (int list = 0; list < ALLOWLISTS; list++) {
+            Set<String> trustedDomains = randomAllowlist(random);
+            TrustedDomainIndex index = newIndex(trustedDomains);
+            List<String> domains = new ArrayList<>(trustedDomains);
+            for (int query = 0; query < QUERIES; query++) {
+                String host = randomHost(random, domains);
+                assertEquals(host, legacyIsTrustedHost(trustedDomains, host), index.isTrustedHost(host));
+            }
+        }
+    }
+
+    @Test
+    public void findContainedMatchesLegacyLoop() {
+        Random random = new Random(46);
+        for (int list = 0; list < ALLOWLISTS; list++) {
+            Set<String> trustedDomains = randomAllowlist(random);
+            TrustedDomainIndex index = newIndex(trustedDomains);
+            List<String> domains = new ArrayList<>(trustedDomains);
+            for (int query = 0; query < QUERIES; query++) {
+                String text = randomText(random, domains);
+                String found = index.findContained(text);
+                // the loop reported whichever match the set iterated to first, so only check
+                // that one is found exactly when the loop found one, and that it really occurs
+                if (legacyContainsTrusted(trustedDomains, text)) {
+                    assertTrue(text, found != null && trustedDomains.contains(found) && text.contains(found));
+                } else {
+                    assertNull(text, found);
+                }
+            }
+        }
+    }
+
+    private static TrustedDomainIndex newIndex(Set<String> trustedDomains) {
+        TrustedDomainIndex index = new TrustedDomainIndex();
+        for (String trustedDomain : trustedDomains)
+            assertTrue(trustedDomain, index.add(trustedDomain));
+        return index;
+    }
+
+    private static Set<String> randomAllowlist(Random random) {
+        Set<String> trustedDomains = new LinkedHashSet<>();
+        int size = 1 + random.nextInt(6);
+        while (trustedDomains.size() < size)
+            trustedDomains.add(randomLabels(random, 2 + random.nextInt(2)));
+        return trustedDomains;
+    }
+
+    private static String randomHost(Random random, List<String> domains) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return randomLabels(random, 1 + random.nextInt(4));
+            case 1:
+                return randomLabels(random, 1 + random.nextInt(2)) + "." + domains.get(random.nextInt(domains.size()));
+            default:
+                // a suffix of a trusted domain, cut anywhere
+                String domain = domains.get(random.nextInt(domains.size()));
+                return domain.substring(random.nextInt(domain.length()));
+        }
+    }
+
+    // URLs and host fragments with trusted domains, or pieces of them, anywhere in them
+    private static String randomText(Random random, List<String> domains) {
+        StringBuilder text = new StringBuilder();
+        int parts = random.nextInt(4);
+        for (int part = 0; part < parts; part++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    text.append(domains.get(random.nextInt(domains.size())));
+                    break;
+                case 1:
+                    String domain = domains.get(random.nextInt(domains.size()));
+                    int start = random.nextInt(domain.length());
+                    text.append(domain, start, start + random.nextInt(domain.length() - start + 1));
+                    break;
+                case 2:
+                    text.append(randomLabels(random, 1 + random.nextInt(3)));
+                    break;
+                default:
+                    text.append("./:-".charAt(random.nextInt(4)));
+                    break;
+            }
+        }
+        return text.toString();
+    }
+
+    private static String randomLabels(Random random, int labels) {
+        StringBuilder text = new StringBuilder();
+        for (int label = 0; label < labels; label++) {
+            if (label > 0)
+                text.append('.');
+            int length = 1 + random.nextInt(3);
+            for (int i = 0; i < length; i++)
+                text.append((char) ('a' + random.nextInt(3)));
+        }
+        return text.toString();
+    }
+}